@@ -0,0 +1,170 @@
+package novoda.lib.sqliteprovider.build;
+
+import org.gradle.api.GradleException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import novoda.lib.sqliteprovider.util.SQLStatementReader;
+
+/**
+ * Writes the migrations folder into the single asset read by {@code novoda.lib.sqliteprovider.migration.MigrationBundle},
+ * whose documentation describes the layout. Used by the tasks of {@code migrations.gradle}.
+ */
+public final class MigrationBundleWriter {
+
+    static final int MAGIC = 0x53514d42;
+    static final int FORMAT_VERSION = 1;
+
+    private static final String CHARSET = "UTF-8";
+
+    private MigrationBundleWriter() {
+    }
+
+    /**
+     * @return the migration files of the folder, oldest first
+     */
+    public static List<File> migrationFiles(File sourceDir) {
+        File[] listed = sourceDir.listFiles();
+        List<File> files = new ArrayList<File>();
+        for (File file : listed == null ? new File[0] : listed) {
+            if (file.isFile()) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                int left = versionOf(lhs);
+                int right = versionOf(rhs);
+                return left < right ? -1 : (left == right ? 0 : 1);
+            }
+        });
+        return files;
+    }
+
+    /**
+     * @return the version a migration file starts with, as in {@code 2_add_shops.sql}
+     */
+    public static int versionOf(File sqlFile) {
+        String prefix = sqlFile.getName().split("_", 0)[0];
+        try {
+            return Integer.parseInt(prefix);
+        } catch (NumberFormatException e) {
+            throw new GradleException("Migration " + sqlFile.getName() + " does not start with a numeric version");
+        }
+    }
+
+    /**
+     * @return the statements of the file, split as {@link SQLStatementReader} splits them on the device
+     */
+    public static List<String> statementsOf(File sqlFile) throws IOException {
+        List<String> statements = new ArrayList<String>();
+        SQLStatementReader reader = new SQLStatementReader(new InputStreamReader(new FileInputStream(sqlFile), CHARSET));
+        try {
+            for (String statement = reader.nextStatement(); statement != null; statement = reader.nextStatement()) {
+                statements.add(statement);
+            }
+        } catch (IOException e) {
+            throw new GradleException("Could not read migration " + sqlFile.getName() + ": " + e.getMessage(), e);
+        } finally {
+            reader.close();
+        }
+        return statements;
+    }
+
+    /**
+     * @return the version of the newest migration of the files
+     */
+    public static int newestVersion(List<File> files) {
+        int newest = 0;
+        for (File file : files) {
+            newest = Math.max(newest, versionOf(file));
+        }
+        return newest;
+    }
+
+    public static void write(File sourceDir, File bundle) throws IOException {
+        List<File> files = migrationFiles(sourceDir);
+        Set<Integer> versions = new HashSet<Integer>();
+        List<String> names = new ArrayList<String>(files.size());
+        for (File file : files) {
+            versions.add(versionOf(file));
+            names.add(file.getName());
+        }
+        if (versions.size() != files.size()) {
+            throw new GradleException("Several migrations in " + sourceDir + " share a version: " + names);
+        }
+
+        List<Section> sections = new ArrayList<Section>(files.size());
+        for (File file : files) {
+            sections.add(Section.of(file));
+        }
+
+        bundle.getParentFile().mkdirs();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(bundle)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(newestVersion(files));
+            out.writeInt(sections.size());
+            for (Section section : sections) {
+                out.writeUTF(section.name);
+                out.writeInt(section.version);
+                out.writeLong(section.crc);
+                out.writeInt(section.count);
+                out.writeInt(section.bytes.length);
+            }
+            for (Section section : sections) {
+                out.write(section.bytes);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static final class Section {
+
+        final String name;
+        final int version;
+        final long crc;
+        final int count;
+        final byte[] bytes;
+
+        private Section(String name, int version, long crc, int count, byte[] bytes) {
+            this.name = name;
+            this.version = version;
+            this.crc = crc;
+            this.count = count;
+            this.bytes = bytes;
+        }
+
+        static Section of(File sqlFile) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            CRC32 crc = new CRC32();
+            List<String> statements = statementsOf(sqlFile);
+            for (String statement : statements) {
+                byte[] encoded = statement.getBytes(CHARSET);
+                data.writeInt(encoded.length);
+                data.write(encoded);
+                crc.update(encoded);
+            }
+            data.flush();
+            return new Section(sqlFile.getName(), versionOf(sqlFile), crc.getValue(), statements.size(), bytes.toByteArray());
+        }
+    }
+}
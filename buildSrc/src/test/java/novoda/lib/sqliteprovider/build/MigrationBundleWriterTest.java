@@ -0,0 +1,154 @@
+package novoda.lib.sqliteprovider.build;
+
+import org.gradle.api.GradleException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import novoda.lib.sqliteprovider.util.SQLStatementReader;
+
+import static org.junit.Assert.assertEquals;
+
+public class MigrationBundleWriterTest {
+
+    private static final String CREATE = "-- shops and what they sell\n"
+            + "CREATE TABLE shops (\n"
+            + "    _id INTEGER PRIMARY KEY, -- row id\n"
+            + "    name TEXT DEFAULT 'a -- b; c'\n"
+            + ");\n"
+            + "CREATE TRIGGER shop_name AFTER INSERT ON shops BEGIN\n"
+            + "    UPDATE shops SET name = CASE WHEN new.name IS NULL THEN 'none' ELSE new.name END WHERE _id = new._id;\n"
+            + "END;\n";
+    private static final String SEED = "INSERT INTO shops (name) VALUES ('it''s /* not */ a comment');";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBundlesTheStatementsTheDeviceReads() throws IOException {
+        File migrations = folder.newFolder("migrations");
+        write(new File(migrations, "10_seed.sql"), SEED);
+        write(new File(migrations, "2_create.sql"), CREATE);
+        File bundle = new File(folder.getRoot(), "migrations.bundle");
+
+        MigrationBundleWriter.write(migrations, bundle);
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(bundle)));
+        try {
+            assertEquals(MigrationBundleWriter.MAGIC, in.readInt());
+            assertEquals(MigrationBundleWriter.FORMAT_VERSION, in.readInt());
+            assertEquals(10, in.readInt());
+            assertEquals(2, in.readInt());
+            Index create = Index.read(in);
+            Index seed = Index.read(in);
+            assertEquals("2_create.sql", create.name);
+            assertEquals(2, create.version);
+            assertEquals("10_seed.sql", seed.name);
+            assertEquals(10, seed.version);
+            assertEquals(Arrays.asList(
+                    "CREATE TABLE shops ( _id INTEGER PRIMARY KEY, name TEXT DEFAULT 'a -- b; c' );",
+                    "CREATE TRIGGER shop_name AFTER INSERT ON shops BEGIN UPDATE shops SET name = CASE WHEN new.name IS NULL"
+                            + " THEN 'none' ELSE new.name END WHERE _id = new._id; END;"
+            ), create.readStatements(in));
+            assertEquals(Arrays.asList(SEED), seed.readStatements(in));
+            assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testSplitsLikeTheRuntimeReader() throws IOException {
+        File migrations = folder.newFolder("migrations");
+        File create = new File(migrations, "1_create.sql");
+        write(create, CREATE);
+
+        assertEquals(readAll(new SQLStatementReader(new StringReader(CREATE))), MigrationBundleWriter.statementsOf(create));
+    }
+
+    @Test(expected = GradleException.class)
+    public void testRejectsMigrationsSharingAVersion() throws IOException {
+        File migrations = folder.newFolder("migrations");
+        write(new File(migrations, "1_create.sql"), CREATE);
+        write(new File(migrations, "1_seed.sql"), SEED);
+
+        MigrationBundleWriter.write(migrations, new File(folder.getRoot(), "migrations.bundle"));
+    }
+
+    @Test(expected = GradleException.class)
+    public void testRejectsAnIncompleteStatement() throws IOException {
+        File migrations = folder.newFolder("migrations");
+        File create = new File(migrations, "1_create.sql");
+        write(create, "CREATE TABLE shops (_id INTEGER)");
+
+        MigrationBundleWriter.statementsOf(create);
+    }
+
+    private static List<String> readAll(SQLStatementReader reader) throws IOException {
+        List<String> statements = new ArrayList<String>();
+        for (String statement = reader.nextStatement(); statement != null; statement = reader.nextStatement()) {
+            statements.add(statement);
+        }
+        return statements;
+    }
+
+    private static void write(File file, String sql) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(sql);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static final class Index {
+
+        final String name;
+        final int version;
+        final long crc;
+        final int count;
+        final int byteCount;
+
+        private Index(String name, int version, long crc, int count, int byteCount) {
+            this.name = name;
+            this.version = version;
+            this.crc = crc;
+            this.count = count;
+            this.byteCount = byteCount;
+        }
+
+        static Index read(DataInputStream in) throws IOException {
+            return new Index(in.readUTF(), in.readInt(), in.readLong(), in.readInt(), in.readInt());
+        }
+
+        List<String> readStatements(DataInputStream in) throws IOException {
+            List<String> statements = new ArrayList<String>(count);
+            CRC32 checksum = new CRC32();
+            int bytesRead = 0;
+            for (int i = 0; i < count; i++) {
+                byte[] encoded = new byte[in.readInt()];
+                in.readFully(encoded);
+                checksum.update(encoded);
+                bytesRead += 4 + encoded.length;
+                statements.add(new String(encoded, "UTF-8"));
+            }
+            assertEquals(byteCount, bytesRead);
+            assertEquals(crc, checksum.getValue());
+            return statements;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package novoda.rest.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import novoda.lib.sqliteprovider.util.DatabaseUtils;
+
+/**
+ * Compares the per-row triggers of {@link SQLiteRelationship#TRIGGERS} with the
+ * declared foreign keys of {@link SQLiteRelationship#FOREIGN_KEY} when updating
+ * and deleting every parent of a one to many relationship.
+ */
+public class CascadeDeleteBenchmarkTest extends AndroidTestCase {
+
+    private static final String TAG = CascadeDeleteBenchmarkTest.class.getSimpleName();
+
+    private static final int PARENTS = 2000;
+    private static final int CHILDREN_PER_PARENT = 5;
+
+    private SQLiteDatabase db;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        db = SQLiteDatabase.create(null);
+        db.execSQL("PRAGMA foreign_keys = ON;");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        db.close();
+        super.tearDown();
+    }
+
+    public void testTriggersDeleteChildrenOnUpdateAndDelete() {
+        createTables(SQLiteRelationship.TRIGGERS);
+        insertRows();
+
+        long update = time("UPDATE shop SET name = 'renamed';");
+        assertEquals(0, children());
+
+        insertRows();
+        long delete = time("DELETE FROM shop;");
+        assertEquals(0, children());
+
+        Log.i(TAG, "triggers: update " + update + "ms, delete " + delete + "ms");
+    }
+
+    public void testForeignKeysDeleteChildrenOnDeleteOnly() {
+        createTables(SQLiteRelationship.FOREIGN_KEY);
+        insertRows();
+
+        long update = time("UPDATE shop SET name = 'renamed';");
+        assertEquals(PARENTS * CHILDREN_PER_PARENT, children());
+
+        long delete = time("DELETE FROM shop;");
+        assertEquals(0, children());
+
+        Log.i(TAG, "foreign keys: update " + update + "ms, delete " + delete + "ms");
+    }
+
+    private void createTables(SQLiteRelationship relationship) {
+        UriTableCreator shop = new UriTableCreator(Uri.parse("content://novoda.rest.test/shop"));
+        UriTableCreator fireworks = new UriTableCreator(Uri.parse("content://novoda.rest.test/shop/1/fireworks"));
+        fireworks.setRelationship(relationship);
+
+        List<String> statements = new ArrayList<String>();
+        statements.add(DatabaseUtils.getCreateStatement(shop));
+        statements.add("ALTER TABLE shop ADD COLUMN name TEXT;");
+        statements.add(DatabaseUtils.getCreateStatement(fireworks));
+        statements.addAll(DatabaseUtils.getIndexStatements(fireworks));
+        String[] triggers = fireworks.getTriggers();
+        if (triggers != null) {
+            for (String trigger : triggers) {
+                statements.add(trigger);
+            }
+        }
+        for (String statement : statements) {
+            db.execSQL(statement);
+        }
+    }
+
+    private void insertRows() {
+        SQLiteStatement parent = db.compileStatement("INSERT INTO shop (name) VALUES (?);");
+        SQLiteStatement child = db.compileStatement("INSERT INTO fireworks (shop_id) VALUES (?);");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < PARENTS; i++) {
+                parent.bindString(1, "shop " + i);
+                long id = parent.executeInsert();
+                for (int j = 0; j < CHILDREN_PER_PARENT; j++) {
+                    child.bindLong(1, id);
+                    child.executeInsert();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            parent.close();
+            child.close();
+        }
+    }
+
+    private long time(String sql) {
+        long start = System.nanoTime();
+        db.execSQL(sql);
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private long children() {
+        return DatabaseUtils.queryNumEntries(db, "fireworks");
+    }
+}
@@ -0,0 +1,175 @@
+package novoda.lib.sqliteprovider.cursor;
+
+import android.database.Cursor;
+import android.os.Bundle;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Packs selected columns of a query result into primitive arrays held in a {@link Bundle}, so a client can
+ * pull numeric data out of the provider through a single
+ * {@link android.content.ContentResolver#call(android.net.Uri, String, String, Bundle)} instead of walking a
+ * cursor row by row.
+ * <p/>
+ * The request is a {@link Bundle} naming the columns to read as {@link #EXTRA_LONG_COLUMNS},
+ * {@link #EXTRA_DOUBLE_COLUMNS} and {@link #EXTRA_STRING_COLUMNS}, optionally narrowed down with
+ * {@link #EXTRA_SELECTION}, {@link #EXTRA_SELECTION_ARGS} and {@link #EXTRA_SORT_ORDER}. The Uri to query is
+ * passed as the {@code arg} of the call.
+ * <p/>
+ * In the result, {@code long} and {@code double} columns are read with {@link #getLongs(Bundle, String)} and
+ * {@link #getDoubles(Bundle, String)}, with null values read as 0. {@code String} columns are dictionary encoded: {@link #getDictionary(Bundle, String)} holds every
+ * distinct value once and {@link #getCodes(Bundle, String)} holds, for each row, the position of its value in the
+ * dictionary, or -1 for null. Each kind of array is kept under its own key prefix, so no column name can overwrite
+ * another entry of the snapshot.
+ * <p/>
+ * The whole snapshot travels in one Binder transaction and is therefore bound by its size limit; use a
+ * selection or a limit on the Uri for very large tables.
+ */
+public final class ColumnarSnapshot {
+
+    public static final String METHOD_QUERY = "novoda.lib.sqliteprovider.QUERY_COLUMNS";
+
+    public static final String EXTRA_LONG_COLUMNS = "longColumns";
+    public static final String EXTRA_DOUBLE_COLUMNS = "doubleColumns";
+    public static final String EXTRA_STRING_COLUMNS = "stringColumns";
+    public static final String EXTRA_SELECTION = "selection";
+    public static final String EXTRA_SELECTION_ARGS = "selectionArgs";
+    public static final String EXTRA_SORT_ORDER = "sortOrder";
+
+    private static final String ROW_COUNT = "rowCount";
+    private static final String LONGS_PREFIX = "longs:";
+    private static final String DOUBLES_PREFIX = "doubles:";
+    private static final String DICTIONARY_PREFIX = "dictionary:";
+    private static final String CODES_PREFIX = "codes:";
+    private static final String[] NO_COLUMNS = new String[0];
+    private static final int NULL_CODE = -1;
+
+    private ColumnarSnapshot() {
+        // Util class
+    }
+
+    /**
+     * @return every column named in the request, in the order longs, doubles, strings
+     */
+    public static String[] projectionFor(Bundle request) {
+        String[] longColumns = columnsOf(request, EXTRA_LONG_COLUMNS);
+        String[] doubleColumns = columnsOf(request, EXTRA_DOUBLE_COLUMNS);
+        String[] stringColumns = columnsOf(request, EXTRA_STRING_COLUMNS);
+        String[] projection = new String[longColumns.length + doubleColumns.length + stringColumns.length];
+        System.arraycopy(longColumns, 0, projection, 0, longColumns.length);
+        System.arraycopy(doubleColumns, 0, projection, longColumns.length, doubleColumns.length);
+        System.arraycopy(stringColumns, 0, projection, longColumns.length + doubleColumns.length, stringColumns.length);
+        return projection;
+    }
+
+    /**
+     * Reads every row of the cursor into the columns named in the request. The cursor is not closed.
+     */
+    public static Bundle from(Cursor cursor, Bundle request) {
+        String[] longColumns = columnsOf(request, EXTRA_LONG_COLUMNS);
+        String[] doubleColumns = columnsOf(request, EXTRA_DOUBLE_COLUMNS);
+        String[] stringColumns = columnsOf(request, EXTRA_STRING_COLUMNS);
+
+        int rowCount = Math.max(cursor.getCount(), 0);
+        int[] longIndices = indicesOf(cursor, longColumns);
+        int[] doubleIndices = indicesOf(cursor, doubleColumns);
+        int[] stringIndices = indicesOf(cursor, stringColumns);
+
+        long[][] longs = new long[longColumns.length][rowCount];
+        double[][] doubles = new double[doubleColumns.length][rowCount];
+        int[][] codes = new int[stringColumns.length][rowCount];
+        Dictionary[] dictionaries = new Dictionary[stringColumns.length];
+        for (int column = 0; column < stringColumns.length; column++) {
+            dictionaries[column] = new Dictionary();
+        }
+
+        int row = 0;
+        if (cursor.moveToFirst()) {
+            do {
+                for (int column = 0; column < longIndices.length; column++) {
+                    longs[column][row] = cursor.getLong(longIndices[column]);
+                }
+                for (int column = 0; column < doubleIndices.length; column++) {
+                    doubles[column][row] = cursor.getDouble(doubleIndices[column]);
+                }
+                for (int column = 0; column < stringIndices.length; column++) {
+                    codes[column][row] = dictionaries[column].codeFor(cursor.getString(stringIndices[column]));
+                }
+                row++;
+            } while (cursor.moveToNext() && row < rowCount);
+        }
+
+        Bundle snapshot = new Bundle();
+        snapshot.putInt(ROW_COUNT, row);
+        for (int column = 0; column < longColumns.length; column++) {
+            snapshot.putLongArray(LONGS_PREFIX + longColumns[column], longs[column]);
+        }
+        for (int column = 0; column < doubleColumns.length; column++) {
+            snapshot.putDoubleArray(DOUBLES_PREFIX + doubleColumns[column], doubles[column]);
+        }
+        for (int column = 0; column < stringColumns.length; column++) {
+            snapshot.putStringArray(DICTIONARY_PREFIX + stringColumns[column], dictionaries[column].values());
+            snapshot.putIntArray(CODES_PREFIX + stringColumns[column], codes[column]);
+        }
+        return snapshot;
+    }
+
+    public static int getRowCount(Bundle snapshot) {
+        return snapshot.getInt(ROW_COUNT);
+    }
+
+    public static long[] getLongs(Bundle snapshot, String column) {
+        return snapshot.getLongArray(LONGS_PREFIX + column);
+    }
+
+    public static double[] getDoubles(Bundle snapshot, String column) {
+        return snapshot.getDoubleArray(DOUBLES_PREFIX + column);
+    }
+
+    public static String[] getDictionary(Bundle snapshot, String column) {
+        return snapshot.getStringArray(DICTIONARY_PREFIX + column);
+    }
+
+    public static int[] getCodes(Bundle snapshot, String column) {
+        return snapshot.getIntArray(CODES_PREFIX + column);
+    }
+
+    private static String[] columnsOf(Bundle request, String key) {
+        String[] columns = request == null ? null : request.getStringArray(key);
+        return columns == null ? NO_COLUMNS : columns;
+    }
+
+    private static int[] indicesOf(Cursor cursor, String[] columns) {
+        int[] indices = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            indices[i] = cursor.getColumnIndexOrThrow(columns[i]);
+        }
+        return indices;
+    }
+
+    private static final class Dictionary {
+
+        private final Map<String, Integer> codes = new HashMap<String, Integer>();
+
+        int codeFor(String value) {
+            if (value == null) {
+                return NULL_CODE;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = codes.size();
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        String[] values() {
+            String[] values = new String[codes.size()];
+            for (Map.Entry<String, Integer> entry : codes.entrySet()) {
+                values[entry.getValue()] = entry.getKey();
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package novoda.lib.sqliteprovider.cursor;
+
+import android.database.Cursor;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps the rows of a {@link Cursor} onto objects.
+ * <p/>
+ * Subclasses declare the columns they read in the constructor and access them in {@link #mapRow(Row)}
+ * by their position in that declaration. Column indices are resolved once per cursor shape and reused
+ * for every row, so mapping a large result does not pay for a column name lookup per value.
+ * <p/>
+ * A mapper holds no per-cursor state other than the cached indices and can be shared between threads.
+ *
+ * @param <T> the type every row is mapped onto
+ */
+public abstract class RowMapper<T> {
+
+    private final String[] columns;
+
+    private volatile Shape shape;
+
+    protected RowMapper(String... columns) {
+        this.columns = columns.clone();
+    }
+
+    /**
+     * Maps the row the cursor is currently positioned on.
+     *
+     * @param row a view over the current row, valid only for the duration of the call
+     * @return the mapped row
+     */
+    protected abstract T mapRow(Row row);
+
+    /**
+     * Maps the row the cursor is currently positioned on.
+     */
+    public T map(Cursor cursor) {
+        return mapRow(rowFor(cursor));
+    }
+
+    /**
+     * Maps every row of the cursor, starting from the first one, into a list sized to the cursor count.
+     * The cursor is not closed.
+     */
+    public List<T> mapAll(Cursor cursor) {
+        List<T> rows = new ArrayList<T>(Math.max(cursor.getCount(), 0));
+        if (!cursor.moveToFirst()) {
+            return rows;
+        }
+        Row row = rowFor(cursor);
+        do {
+            rows.add(mapRow(row));
+        } while (cursor.moveToNext());
+        return rows;
+    }
+
+    /**
+     * Maps every row of the cursor, starting from the first one, into an array. Follows the contract of
+     * {@link java.util.Collection#toArray(Object[])}: the given array is used if it is big enough,
+     * otherwise a new one of the same runtime type and the size of the cursor is allocated.
+     * The cursor is not closed.
+     */
+    @SuppressWarnings("unchecked")
+    public T[] mapAll(Cursor cursor, T[] array) {
+        int count = Math.max(cursor.getCount(), 0);
+        T[] rows = array.length >= count ? array : (T[]) Array.newInstance(array.getClass().getComponentType(), count);
+        int position = 0;
+        if (cursor.moveToFirst()) {
+            Row row = rowFor(cursor);
+            do {
+                rows[position++] = mapRow(row);
+            } while (cursor.moveToNext() && position < count);
+        }
+        if (position < rows.length) {
+            rows[position] = null;
+        }
+        return rows;
+    }
+
+    private Row rowFor(Cursor cursor) {
+        return new Row(cursor, indicesFor(cursor));
+    }
+
+    private int[] indicesFor(Cursor cursor) {
+        String[] columnNames = cursor.getColumnNames();
+        Shape current = shape;
+        if (current == null || !current.matches(columnNames)) {
+            current = new Shape(columnNames, resolveIndices(cursor));
+            shape = current;
+        }
+        return current.indices;
+    }
+
+    private int[] resolveIndices(Cursor cursor) {
+        int[] indices = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            indices[i] = cursor.getColumnIndexOrThrow(columns[i]);
+        }
+        return indices;
+    }
+
+    private static final class Shape {
+
+        private final String[] columnNames;
+        private final int[] indices;
+
+        Shape(String[] columnNames, int[] indices) {
+            this.columnNames = columnNames;
+            this.indices = indices;
+        }
+
+        boolean matches(String[] otherColumnNames) {
+            return columnNames == otherColumnNames || Arrays.equals(columnNames, otherColumnNames);
+        }
+    }
+
+    /**
+     * Read access to the current row of a cursor. Columns are addressed by their position in the
+     * declaration passed to the {@link RowMapper} constructor, not by their position in the cursor.
+     */
+    public static final class Row {
+
+        private final Cursor cursor;
+        private final int[] indices;
+
+        Row(Cursor cursor, int[] indices) {
+            this.cursor = cursor;
+            this.indices = indices;
+        }
+
+        public boolean isNull(int column) {
+            return cursor.isNull(indices[column]);
+        }
+
+        public String getString(int column) {
+            return cursor.getString(indices[column]);
+        }
+
+        public byte[] getBlob(int column) {
+            return cursor.getBlob(indices[column]);
+        }
+
+        public short getShort(int column) {
+            return cursor.getShort(indices[column]);
+        }
+
+        public int getInt(int column) {
+            return cursor.getInt(indices[column]);
+        }
+
+        public long getLong(int column) {
+            return cursor.getLong(indices[column]);
+        }
+
+        public float getFloat(int column) {
+            return cursor.getFloat(indices[column]);
+        }
+
+        public double getDouble(int column) {
+            return cursor.getDouble(indices[column]);
+        }
+
+        public boolean getBoolean(int column) {
+            return cursor.getInt(indices[column]) != 0;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package novoda.lib.sqliteprovider.migration;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+
+import novoda.lib.sqliteprovider.util.Log;
+
+/**
+ * Connection settings suited to building a database in bulk, applied for the duration of a migration: a larger
+ * page cache, temporary tables and indices kept in memory and a relaxed {@code synchronous} level. The settings
+ * found on the connection are read beforehand and put back by {@link Applied#restore()}, whether the migration
+ * succeeded or not.
+ * <p/>
+ * SQLite refuses to change {@code synchronous} inside a transaction, so it is applied on its own by
+ * {@link #applyOutsideTransaction(SQLiteDatabase)} before the transaction migrations run in is begun, and restored
+ * once it has been committed. The cache size and {@code temp_store} are applied by {@link #apply(SQLiteDatabase)}
+ * inside that transaction; {@code temp_store} is left as it is if temporary tables are already in use. The journal
+ * mode is not part of the profile, as it can not be changed inside the transaction either.
+ */
+public class BulkLoadProfile {
+
+    public static final int DEFAULT_CACHE_SIZE_KIB = 16 * 1024;
+
+    public static final int SYNCHRONOUS_OFF = 0;
+    public static final int SYNCHRONOUS_NORMAL = 1;
+
+    private static final int TEMP_STORE_MEMORY = 2;
+
+    private static final String CACHE_SIZE = "cache_size";
+    private static final String TEMP_STORE = "temp_store";
+    private static final String SYNCHRONOUS = "synchronous";
+    private static final long UNCHANGED = Long.MIN_VALUE;
+
+    private final int cacheSizeKib;
+    private final int synchronous;
+
+    public BulkLoadProfile() {
+        this(DEFAULT_CACHE_SIZE_KIB);
+    }
+
+    /**
+     * @param cacheSizeKib the page cache to use, in KiB
+     */
+    public BulkLoadProfile(int cacheSizeKib) {
+        this(cacheSizeKib, SYNCHRONOUS_OFF);
+    }
+
+    /**
+     * @param cacheSizeKib the page cache to use, in KiB
+     * @param synchronous  one of {@link #SYNCHRONOUS_OFF} or {@link #SYNCHRONOUS_NORMAL}
+     */
+    public BulkLoadProfile(int cacheSizeKib, int synchronous) {
+        this.cacheSizeKib = cacheSizeKib;
+        this.synchronous = synchronous;
+    }
+
+    /**
+     * Applies the cache size and {@code temp_store}, leaving a setting untouched if its current value can not be
+     * read back or SQLite refuses the change. Can be called inside a transaction.
+     */
+    public Applied apply(SQLiteDatabase db) {
+        // a negative cache_size is a size in KiB rather than a number of pages
+        long cacheSize = change(db, CACHE_SIZE, -cacheSizeKib);
+        long tempStore;
+        try {
+            tempStore = change(db, TEMP_STORE, TEMP_STORE_MEMORY);
+        } catch (SQLException e) {
+            // temporary tables are in use
+            tempStore = UNCHANGED;
+        }
+        return new Applied(db, cacheSize, tempStore, UNCHANGED);
+    }
+
+    /**
+     * Applies the {@code synchronous} level, which SQLite only accepts outside of a transaction: call it before
+     * beginning the transaction migrations run in and restore it once that transaction has ended.
+     */
+    public Applied applyOutsideTransaction(SQLiteDatabase db) {
+        return new Applied(db, UNCHANGED, UNCHANGED, change(db, SYNCHRONOUS, synchronous));
+    }
+
+    /**
+     * @return the value to restore, or {@link #UNCHANGED} if the setting was left as it was
+     */
+    private static long change(SQLiteDatabase db, String pragma, long value) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        long previous;
+        try {
+            previous = cursor.moveToFirst() ? cursor.getLong(0) : UNCHANGED;
+        } finally {
+            cursor.close();
+        }
+        if (previous == UNCHANGED || previous == value) {
+            return UNCHANGED;
+        }
+        db.execSQL("PRAGMA " + pragma + " = " + value);
+        return previous;
+    }
+
+    /**
+     * The settings of the connection before the profile was applied.
+     */
+    public static final class Applied {
+
+        private final SQLiteDatabase db;
+        private final long cacheSize;
+        private final long tempStore;
+        private final long synchronous;
+
+        private Applied(SQLiteDatabase db, long cacheSize, long tempStore, long synchronous) {
+            this.db = db;
+            this.cacheSize = cacheSize;
+            this.tempStore = tempStore;
+            this.synchronous = synchronous;
+        }
+
+        /**
+         * Puts back every setting that was changed, each on its own so that one SQLite refuses does not keep the
+         * others from being restored.
+         */
+        public void restore() {
+            restore(CACHE_SIZE, cacheSize);
+            restore(TEMP_STORE, tempStore);
+            restore(SYNCHRONOUS, synchronous);
+        }
+
+        private void restore(String pragma, long value) {
+            if (value == UNCHANGED) {
+                return;
+            }
+            try {
+                db.execSQL("PRAGMA " + pragma + " = " + value);
+            } catch (RuntimeException e) {
+                Log.Migration.e("Could not restore " + pragma + " after migrating", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package novoda.lib.sqliteprovider.migration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Holds back the {@code CREATE INDEX} statements of a migration file while the statements following them only
+ * insert rows, so that each index is built once over the loaded data instead of being maintained row by row.
+ * <p/>
+ * Unique indices are never deferred, as they decide the outcome of conflicting inserts. Any statement other than
+ * an insert, as well as the end of the file, releases the deferred indices first, so they exist before the file
+ * is committed and before anything that could depend on them runs.
+ */
+class DeferredIndexes {
+
+    private static final Pattern CREATE_INDEX = Pattern.compile("\\s*CREATE\\s+INDEX\\s.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern INSERT = Pattern.compile("\\s*(INSERT|REPLACE)\\s.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final List<String> deferred = new ArrayList<String>();
+
+    /**
+     * @return true if the statement creates a non unique index and has been held back
+     */
+    boolean defer(String sql) {
+        if (CREATE_INDEX.matcher(sql).matches()) {
+            deferred.add(sql);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the deferred statements that have to run before the given one, in the order they were deferred
+     */
+    List<String> releaseBefore(String sql) {
+        if (deferred.isEmpty() || INSERT.matcher(sql).matches()) {
+            return Collections.emptyList();
+        }
+        return release();
+    }
+
+    /**
+     * @return every deferred statement, in the order they were deferred
+     */
+    List<String> release() {
+        if (deferred.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> released = new ArrayList<String>(deferred);
+        deferred.clear();
+        return released;
+    }
+}
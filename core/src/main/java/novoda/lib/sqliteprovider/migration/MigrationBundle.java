@@ -0,0 +1,255 @@
+package novoda.lib.sqliteprovider.migration;
+
+import android.content.res.AssetManager;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import novoda.lib.sqliteprovider.util.SQLStatementIterator;
+
+/**
+ * The migrations folder compiled at build time by the {@code bundleMigrations} task of {@code migrations.gradle}
+ * into a single asset: the version of the database, an index of every migration file with its version, checksum
+ * and size, followed by the statements of each file, already split.
+ * <p/>
+ * Opening a bundle only reads its header and index, so the version is known without listing the assets folder,
+ * and migrating streams the statements of the files newer than the database, skipping over the others.
+ * <p/>
+ * Layout, in {@link DataInputStream} encoding:
+ * <pre>
+ * int magic, int format, int version, int fileCount
+ * fileCount * (UTF name, int version, long crc32, int statementCount, int byteCount)
+ * fileCount * statementCount * (int length, length bytes of UTF-8)
+ * </pre>
+ * The checksum is the CRC-32 of the UTF-8 bytes of the statements of a file, length prefixes excluded.
+ */
+public final class MigrationBundle {
+
+    static final int MAGIC = 0x53514d42;
+    static final int FORMAT_VERSION = 1;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final String CHARSET = "UTF-8";
+
+    private final AssetManager assets;
+    private final String assetPath;
+    private final int version;
+    private final List<Entry> entries;
+    private final int indexSize;
+
+    private MigrationBundle(AssetManager assets, String assetPath, int version, List<Entry> entries, int indexSize) {
+        this.assets = assets;
+        this.assetPath = assetPath;
+        this.version = version;
+        this.entries = entries;
+        this.indexSize = indexSize;
+    }
+
+    /**
+     * @return the bundle, or null if the application has no such asset
+     */
+    public static MigrationBundle openIfPresent(AssetManager assets, String assetPath) throws IOException {
+        InputStream in;
+        try {
+            in = assets.open(assetPath);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        CountingInputStream counting = new CountingInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+        DataInputStream data = new DataInputStream(counting);
+        try {
+            if (data.readInt() != MAGIC || data.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a migration bundle: " + assetPath);
+            }
+            int version = data.readInt();
+            int fileCount = data.readInt();
+            List<Entry> entries = new ArrayList<Entry>(fileCount);
+            for (int i = 0; i < fileCount; i++) {
+                entries.add(new Entry(data.readUTF(), data.readInt(), data.readLong(), data.readInt(), data.readInt()));
+            }
+            return new MigrationBundle(assets, assetPath, version, Collections.unmodifiableList(entries), counting.count);
+        } finally {
+            data.close();
+        }
+    }
+
+    /**
+     * @return the version of the newest migration, which is the version of a fully migrated database
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Opens the statement sections of the bundle, which are read entry by entry in the order of
+     * {@link #getEntries()}.
+     */
+    Reader read() throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(assets.open(assetPath), BUFFER_SIZE));
+        skipFully(data, indexSize);
+        return new Reader(data);
+    }
+
+    /**
+     * Skips the bytes whatever the stream skips at once; a stream may skip fewer bytes than asked, or none, before
+     * its end, so a byte is read whenever nothing could be skipped to tell the two apart.
+     */
+    private static void skipFully(DataInputStream data, int count) throws IOException {
+        int remaining = count;
+        while (remaining > 0) {
+            int skipped = data.skipBytes(remaining);
+            if (skipped == 0) {
+                if (data.read() == -1) {
+                    throw new EOFException("Truncated migration bundle");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    public static final class Entry {
+
+        private final String name;
+        private final int version;
+        private final long checksum;
+        private final int statementCount;
+        private final int byteCount;
+
+        Entry(String name, int version, long checksum, int statementCount, int byteCount) {
+            this.name = name;
+            this.version = version;
+            this.checksum = checksum;
+            this.statementCount = statementCount;
+            this.byteCount = byteCount;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public int getStatementCount() {
+            return statementCount;
+        }
+    }
+
+    static final class Reader implements Closeable {
+
+        private final DataInputStream data;
+        private EntryStatements current;
+
+        private Reader(DataInputStream data) {
+            this.data = data;
+        }
+
+        /**
+         * @return the statements of the entry, verified against its checksum once fully read
+         */
+        SQLStatementIterator statementsOf(Entry entry) throws IOException {
+            finishCurrent();
+            current = new EntryStatements(data, entry);
+            return current;
+        }
+
+        void skip(Entry entry) throws IOException {
+            finishCurrent();
+            skipFully(data, entry.byteCount);
+        }
+
+        private void finishCurrent() throws IOException {
+            if (current != null) {
+                skipFully(data, current.entry.byteCount - current.bytesRead);
+                current = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            data.close();
+        }
+    }
+
+    private static final class EntryStatements implements SQLStatementIterator {
+
+        private final DataInputStream data;
+        private final Entry entry;
+        private final CRC32 crc = new CRC32();
+        private byte[] buffer = new byte[256];
+        private int statementsRead;
+        private int bytesRead;
+
+        EntryStatements(DataInputStream data, Entry entry) {
+            this.data = data;
+            this.entry = entry;
+        }
+
+        @Override
+        public String nextStatement() throws IOException {
+            if (statementsRead == entry.statementCount) {
+                if (crc.getValue() != entry.checksum) {
+                    throw new IOException("Checksum mismatch in bundled migration " + entry.name);
+                }
+                return null;
+            }
+            int length = data.readInt();
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            data.readFully(buffer, 0, length);
+            crc.update(buffer, 0, length);
+            statementsRead++;
+            bytesRead += 4 + length;
+            return new String(buffer, 0, length, CHARSET);
+        }
+
+        @Override
+        public void close() {
+            // the stream is shared by every entry and closed by the reader
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        int count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
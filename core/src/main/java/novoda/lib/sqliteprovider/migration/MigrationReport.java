@@ -0,0 +1,184 @@
+package novoda.lib.sqliteprovider.migration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a run of {@link Migrations} did and how long it took: for every file, the number of statements executed,
+ * the rows they changed and the time spent executing them, and once measured the time spent committing the
+ * transaction the migrations ran in. Statements slower than the threshold are recorded with their SQL, so the
+ * migrations slowing down a first launch can be found; faster statements are only counted, keeping the report
+ * small for large seed files.
+ */
+public class MigrationReport {
+
+    public static final long DEFAULT_SLOW_STATEMENT_THRESHOLD_MILLIS = 50;
+
+    private static final int MAX_SQL_LENGTH = 200;
+
+    private final long slowStatementThresholdNanos;
+    private final List<FileReport> files = new ArrayList<FileReport>();
+    private final List<SlowStatement> slowStatements = new ArrayList<SlowStatement>();
+    private long commitNanos = -1;
+
+    public MigrationReport() {
+        this(DEFAULT_SLOW_STATEMENT_THRESHOLD_MILLIS);
+    }
+
+    public MigrationReport(long slowStatementThresholdMillis) {
+        this.slowStatementThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowStatementThresholdMillis);
+    }
+
+    public List<FileReport> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    public List<SlowStatement> getSlowStatements() {
+        return Collections.unmodifiableList(slowStatements);
+    }
+
+    public boolean hasSlowStatements() {
+        return !slowStatements.isEmpty();
+    }
+
+    public long getTotalMillis() {
+        long nanos = Math.max(commitNanos, 0);
+        for (FileReport file : files) {
+            nanos += file.executionNanos;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * @return the time spent committing the transaction the migrations ran in, or -1 if it was not measured
+     */
+    public long getCommitMillis() {
+        return commitNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(commitNanos);
+    }
+
+    /**
+     * Records the commit of the transaction the migrations ran in, measured by whoever began it, such as
+     * {@link novoda.lib.sqliteprovider.sqlite.MigratingSQLiteOpenHelper}. The transaction of each file is nested
+     * in that one, so ending it commits nothing by itself.
+     */
+    public void onCommitted(long commitNanos) {
+        this.commitNanos = commitNanos;
+    }
+
+    FileReport startFile(String name) {
+        FileReport file = new FileReport(name);
+        files.add(file);
+        return file;
+    }
+
+    void onStatement(FileReport file, String sql, long nanos) {
+        file.statementCount++;
+        file.executionNanos += nanos;
+        if (nanos >= slowStatementThresholdNanos) {
+            String truncated = sql.length() > MAX_SQL_LENGTH ? sql.substring(0, MAX_SQL_LENGTH) + "..." : sql;
+            slowStatements.add(new SlowStatement(file.name, truncated, TimeUnit.NANOSECONDS.toMillis(nanos)));
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder("Migrated ").append(files.size()).append(" file(s) in ")
+                .append(getTotalMillis()).append("ms");
+        if (commitNanos >= 0) {
+            report.append(", committed in ").append(getCommitMillis()).append("ms");
+        }
+        for (FileReport file : files) {
+            report.append("\n  ").append(file);
+        }
+        for (SlowStatement statement : slowStatements) {
+            report.append("\n  slow: ").append(statement);
+        }
+        return report.toString();
+    }
+
+    public static class FileReport {
+
+        private final String name;
+        private int statementCount;
+        private long rowsAffected = -1;
+        private long executionNanos;
+        private boolean committed;
+
+        FileReport(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getStatementCount() {
+            return statementCount;
+        }
+
+        /**
+         * @return the rows inserted, updated or deleted by the statements of the file, or -1 if unknown
+         */
+        public long getRowsAffected() {
+            return rowsAffected;
+        }
+
+        public long getExecutionMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(executionNanos);
+        }
+
+        /**
+         * @return false if the statements of the file were rolled back because one of them failed
+         */
+        public boolean isCommitted() {
+            return committed;
+        }
+
+        void onCommitted(long rowsAffected) {
+            this.rowsAffected = rowsAffected;
+            this.committed = true;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + statementCount + " statements, " + rowsAffected + " rows, executed in "
+                    + getExecutionMillis() + "ms"
+                    + (committed ? "" : " (rolled back)");
+        }
+    }
+
+    public static class SlowStatement {
+
+        private final String file;
+        private final String sql;
+        private final long millis;
+
+        SlowStatement(String file, String sql, long millis) {
+            this.file = file;
+            this.sql = sql;
+            this.millis = millis;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        /**
+         * @return the SQL of the statement, truncated to a couple of hundred characters
+         */
+        public String getSql() {
+            return sql;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            return millis + "ms in " + file + ": " + sql;
+        }
+    }
+}
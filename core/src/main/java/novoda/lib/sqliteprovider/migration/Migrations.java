@@ -3,12 +3,14 @@ package novoda.lib.sqliteprovider.migration;
 import static novoda.lib.sqliteprovider.util.Log.Migration.*;
 
 import android.content.res.AssetManager;
+import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.text.TextUtils;
 
 import novoda.lib.sqliteprovider.util.Log;
-import novoda.lib.sqliteprovider.util.SQLFile;
+import novoda.lib.sqliteprovider.util.SQLStatementIterator;
+import novoda.lib.sqliteprovider.util.SQLStatementReader;
 
 import java.io.*;
 import java.util.*;
@@ -62,7 +64,36 @@ public class Migrations {
         }
     };
 
-    public static void migrate(SQLiteDatabase db, AssetManager manager, String assetLocation) throws IOException {
+    private static final String TOTAL_CHANGES = "SELECT total_changes()";
+    private static final int PIPELINE_CAPACITY = 256;
+
+    public static MigrationReport migrate(SQLiteDatabase db, AssetManager manager, String assetLocation) throws IOException {
+        return migrate(db, manager, assetLocation, new MigrationReport());
+    }
+
+    /**
+     * Runs the migrations of the asset folder with the bulk load profile applied, restoring the previous settings
+     * of the database afterwards even if a migration fails. Its {@code synchronous} level is left to the caller,
+     * see {@link BulkLoadProfile#applyOutsideTransaction(SQLiteDatabase)}.
+     */
+    public static MigrationReport migrate(SQLiteDatabase db, AssetManager manager, String assetLocation, MigrationReport report,
+                                          BulkLoadProfile profile) throws IOException {
+        BulkLoadProfile.Applied applied = null;
+        try {
+            applied = profile.apply(db);
+            return migrate(db, manager, assetLocation, report);
+        } finally {
+            if (applied != null) {
+                applied.restore();
+            }
+        }
+    }
+
+    /**
+     * Runs the migrations of the asset folder that are newer than the database, recording their timing in the
+     * given report. Files are read and parsed on a background thread, ahead of the one being executed.
+     */
+    public static MigrationReport migrate(SQLiteDatabase db, final AssetManager manager, String assetLocation, MigrationReport report) throws IOException {
 
         if (infoLoggingEnabled()) {
             i("current DB version is: " + db.getVersion());
@@ -72,50 +103,167 @@ public class Migrations {
 
         if (sqls.length == 0) {
             w("No SQL file found in asset folder");
-            return;
+            return report;
         }
 
         Migrations migrations = new Migrations(db.getVersion());
-        Reader reader;
 
         for (String sqlfile : sqls) {
             migrations.add(sqlfile);
         }
 
+        List<String> paths = new ArrayList<String>(migrations.getMigrationsFiles().size());
         for (String sql : migrations.getMigrationsFiles()) {
-            reader = new InputStreamReader(manager.open(assetLocation + File.separator + sql, AssetManager.ACCESS_RANDOM));
-            if (infoLoggingEnabled()) {
-                i("executing SQL file: " + assetLocation + File.separator + sql);
-            }
-            try {
-                db.beginTransaction();
-                for (String insert : SQLFile.statementsFrom(reader)) {
-                    if (TextUtils.isEmpty(insert.trim())) {
-                        continue;
-                    }
-                    if (infoLoggingEnabled()) {
-                        i("executing insert: " + insert);
-                    }
-                    db.execSQL(insert);
-                }
-                db.setTransactionSuccessful();
+            paths.add(assetLocation + File.separator + sql);
+        }
 
-            } catch (SQLException exception) {
-                e("error in migrate against file: " + sql, exception);
-            } finally {
-                db.endTransaction();
+        StatementPipeline pipeline = new StatementPipeline(paths, new StatementPipeline.Files() {
+            @Override
+            public SQLStatementIterator open(String path) throws IOException {
+                return new SQLStatementReader(new InputStreamReader(manager.open(path, AssetManager.ACCESS_STREAMING)));
+            }
+        }, PIPELINE_CAPACITY);
+        try {
+            for (String path : paths) {
+                execute(db, path, pipeline.nextFile(), report);
             }
+        } finally {
+            pipeline.close();
         }
 
         if (migrations.getMigrationsFiles().size() > 0) {
-            int v = migrations.extractDate(migrations.getMigrationsFiles().last());
-            db.setVersion(v);
-            if (infoLoggingEnabled()) {
-                i("setting version of DB to: " + v);
+            setVersion(db, migrations.extractDate(migrations.getMigrationsFiles().last()));
+        }
+        return report;
+    }
+
+    public static MigrationReport migrate(SQLiteDatabase db, MigrationBundle bundle) throws IOException {
+        return migrate(db, bundle, new MigrationReport());
+    }
+
+    /**
+     * Runs the migrations of a bundle with the bulk load profile applied, restoring the previous settings of the
+     * database afterwards even if a migration fails. Its {@code synchronous} level is left to the caller, see
+     * {@link BulkLoadProfile#applyOutsideTransaction(SQLiteDatabase)}.
+     */
+    public static MigrationReport migrate(SQLiteDatabase db, MigrationBundle bundle, MigrationReport report, BulkLoadProfile profile)
+            throws IOException {
+        BulkLoadProfile.Applied applied = null;
+        try {
+            applied = profile.apply(db);
+            return migrate(db, bundle, report);
+        } finally {
+            if (applied != null) {
+                applied.restore();
             }
         }
     }
 
+    /**
+     * Runs the migrations of a bundle compiled at build time that are newer than the database, reading the
+     * statements straight from the bundle instead of parsing the SQL files.
+     */
+    public static MigrationReport migrate(SQLiteDatabase db, MigrationBundle bundle, MigrationReport report) throws IOException {
+        int version = db.getVersion();
+        if (infoLoggingEnabled()) {
+            i("current DB version is: " + version);
+        }
+
+        boolean migrated = false;
+        MigrationBundle.Reader reader = bundle.read();
+        try {
+            for (MigrationBundle.Entry entry : bundle.getEntries()) {
+                if (entry.getVersion() <= version) {
+                    reader.skip(entry);
+                    continue;
+                }
+                execute(db, entry.getName(), reader.statementsOf(entry), report);
+                migrated = true;
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (migrated) {
+            setVersion(db, bundle.getVersion());
+        }
+        return report;
+    }
+
+    private static void execute(SQLiteDatabase db, String name, SQLStatementIterator statements, MigrationReport report) throws IOException {
+        if (infoLoggingEnabled()) {
+            i("executing SQL file: " + name);
+        }
+        MigrationReport.FileReport file = report.startFile(name);
+        PreparedInserts inserts = new PreparedInserts(db);
+        DeferredIndexes indexes = new DeferredIndexes();
+        boolean successful = false;
+        long rowsAffected = -1;
+        try {
+            db.beginTransaction();
+            long changesBefore = totalChanges(db);
+            String insert;
+            while ((insert = statements.nextStatement()) != null) {
+                if (TextUtils.isEmpty(insert.trim())) {
+                    continue;
+                }
+                if (indexes.defer(insert)) {
+                    continue;
+                }
+                execute(inserts, indexes.releaseBefore(insert), report, file);
+                execute(inserts, insert, report, file);
+            }
+            execute(inserts, indexes.release(), report, file);
+            long changesAfter = totalChanges(db);
+            if (changesBefore != -1 && changesAfter != -1) {
+                rowsAffected = changesAfter - changesBefore;
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+
+        } catch (SQLException exception) {
+            e("error in migrate against file: " + name, exception);
+        } finally {
+            inserts.release();
+            db.endTransaction();
+            if (successful) {
+                file.onCommitted(rowsAffected);
+            }
+            statements.close();
+        }
+    }
+
+    private static void execute(PreparedInserts inserts, List<String> sqls, MigrationReport report, MigrationReport.FileReport file) {
+        for (String sql : sqls) {
+            execute(inserts, sql, report, file);
+        }
+    }
+
+    private static void execute(PreparedInserts inserts, String sql, MigrationReport report, MigrationReport.FileReport file) {
+        if (infoLoggingEnabled()) {
+            i("executing insert: " + sql);
+        }
+        long start = System.nanoTime();
+        inserts.execute(sql);
+        report.onStatement(file, sql, System.nanoTime() - start);
+    }
+
+    private static long totalChanges(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery(TOTAL_CHANGES, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void setVersion(SQLiteDatabase db, int version) {
+        db.setVersion(version);
+        if (infoLoggingEnabled()) {
+            i("setting version of DB to: " + version);
+        }
+    }
+
     public static int getVersion(AssetManager assets, String migrationsPath) throws IOException {
         int version = 1;
         String[] sqls = assets.list(migrationsPath);
@@ -0,0 +1,274 @@
+package novoda.lib.sqliteprovider.migration;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Executes the statements of a migration file, recognising runs of single row
+ * {@code INSERT INTO table (columns) VALUES (literals);} statements into the same table and columns. Such a run
+ * is compiled once into a {@link SQLiteStatement}, and each row only binds its literal values, sparing SQLite from
+ * parsing and planning every line of a seed file.
+ * <p/>
+ * Only plain literals are bound: numbers, quoted strings, {@code X'..'} blobs and {@code NULL}. Any other
+ * statement, including inserts with expressions or several rows, goes through {@link SQLiteDatabase#execSQL(String)}
+ * unchanged.
+ */
+class PreparedInserts {
+
+    private static final Pattern INSERT_HEADER = Pattern.compile(
+            "\\s*INSERT\\s+(OR\\s+[A-Z]+\\s+)?INTO\\s+\\S+\\s*", Pattern.CASE_INSENSITIVE);
+    private static final Pattern VALUES_KEYWORD = Pattern.compile("\\s*VALUES\\s*", Pattern.CASE_INSENSITIVE);
+    private static final Pattern INTEGER = Pattern.compile("[+-]?\\d+");
+    private static final Pattern REAL = Pattern.compile("[+-]?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+    private static final String NULL = "NULL";
+
+    private final SQLiteDatabase db;
+
+    private String header;
+    private SQLiteStatement statement;
+
+    PreparedInserts(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    void execute(String sql) {
+        Insert insert = Insert.parse(sql);
+        if (insert == null) {
+            release();
+            db.execSQL(sql);
+            return;
+        }
+        if (!insert.header.equals(header)) {
+            release();
+            statement = db.compileStatement(insert.preparedSql());
+            header = insert.header;
+        }
+        insert.bindTo(statement);
+        statement.executeInsert();
+    }
+
+    /**
+     * Closes the statement compiled for the current run of inserts, if any.
+     */
+    void release() {
+        if (statement != null) {
+            statement.close();
+            statement = null;
+            header = null;
+        }
+    }
+
+    /**
+     * A single row insert of literal values, split into the part shared by every row of a run and the values.
+     */
+    static final class Insert {
+
+        final String header;
+        final List<Object> values;
+
+        private Insert(String header, List<Object> values) {
+            this.header = header;
+            this.values = values;
+        }
+
+        String preparedSql() {
+            StringBuilder sql = new StringBuilder(header.length() + 10 + values.size() * 2);
+            sql.append(header).append(" VALUES (");
+            for (int i = 0; i < values.size(); i++) {
+                sql.append(i == 0 ? "?" : ",?");
+            }
+            return sql.append(')').toString();
+        }
+
+        void bindTo(SQLiteStatement statement) {
+            statement.clearBindings();
+            for (int i = 0; i < values.size(); i++) {
+                Object value = values.get(i);
+                int index = i + 1;
+                if (value == null) {
+                    statement.bindNull(index);
+                } else if (value instanceof Long) {
+                    statement.bindLong(index, (Long) value);
+                } else if (value instanceof Double) {
+                    statement.bindDouble(index, (Double) value);
+                } else if (value instanceof byte[]) {
+                    statement.bindBlob(index, (byte[]) value);
+                } else {
+                    statement.bindString(index, (String) value);
+                }
+            }
+        }
+
+        /**
+         * @return the insert, or null if the statement is not a single row insert of literals with a column list
+         */
+        static Insert parse(String sql) {
+            int end = sql.length();
+            while (end > 0 && (sql.charAt(end - 1) == ';' || Character.isWhitespace(sql.charAt(end - 1)))) {
+                end--;
+            }
+            int columnsStart = indexOfUnquoted(sql, '(', 0, end);
+            if (columnsStart == -1 || !INSERT_HEADER.matcher(sql.substring(0, columnsStart)).matches()) {
+                return null;
+            }
+            int columnsEnd = indexOfUnquoted(sql, ')', columnsStart, end);
+            if (columnsEnd == -1) {
+                return null;
+            }
+            int columnCount = countColumns(sql, columnsStart + 1, columnsEnd);
+            int valuesStart = indexOfUnquoted(sql, '(', columnsEnd, end);
+            if (valuesStart == -1 || sql.charAt(end - 1) != ')'
+                    || !VALUES_KEYWORD.matcher(sql.substring(columnsEnd + 1, valuesStart)).matches()) {
+                return null;
+            }
+            List<Object> values = parseLiterals(sql, valuesStart + 1, end - 1);
+            if (values == null || values.size() != columnCount) {
+                return null;
+            }
+            return new Insert(sql.substring(0, columnsEnd + 1).trim(), values);
+        }
+
+        private static int countColumns(String sql, int start, int end) {
+            int count = 1;
+            for (int i = start; i < end; i = skipQuoted(sql, i, end)) {
+                if (sql.charAt(i) == ',') {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private static List<Object> parseLiterals(String sql, int start, int end) {
+            List<Object> values = new ArrayList<Object>();
+            int position = start;
+            while (true) {
+                int valueEnd = position;
+                while (valueEnd < end && sql.charAt(valueEnd) != ',') {
+                    char c = sql.charAt(valueEnd);
+                    if (c == '(' || c == ')') {
+                        return null;
+                    }
+                    valueEnd = skipQuoted(sql, valueEnd, end);
+                }
+                String literal = sql.substring(position, valueEnd).trim();
+                if (literal.length() == 0) {
+                    return null;
+                }
+                Object value = parseLiteral(literal);
+                if (value == Unparsed.INSTANCE) {
+                    return null;
+                }
+                values.add(value);
+                if (valueEnd == end) {
+                    return values;
+                }
+                position = valueEnd + 1;
+            }
+        }
+
+        private static Object parseLiteral(String literal) {
+            char first = literal.charAt(0);
+            if (first == '\'') {
+                return unquote(literal, 0);
+            }
+            if ((first == 'x' || first == 'X') && literal.length() > 1 && literal.charAt(1) == '\'') {
+                Object hex = unquote(literal, 1);
+                return hex instanceof String ? decodeHex((String) hex) : Unparsed.INSTANCE;
+            }
+            if (NULL.equals(literal.toUpperCase(Locale.US))) {
+                return null;
+            }
+            try {
+                if (INTEGER.matcher(literal).matches()) {
+                    return Long.valueOf(literal.charAt(0) == '+' ? literal.substring(1) : literal);
+                }
+                if (REAL.matcher(literal).matches()) {
+                    return Double.valueOf(literal);
+                }
+            } catch (NumberFormatException e) {
+                // out of range, left for SQLite to interpret
+            }
+            return Unparsed.INSTANCE;
+        }
+
+        private static Object unquote(String literal, int start) {
+            StringBuilder value = new StringBuilder(literal.length());
+            int i = start + 1;
+            while (i < literal.length()) {
+                char c = literal.charAt(i);
+                if (c == '\'') {
+                    if (i + 1 < literal.length() && literal.charAt(i + 1) == '\'') {
+                        value.append('\'');
+                        i += 2;
+                        continue;
+                    }
+                    return i == literal.length() - 1 ? value.toString() : Unparsed.INSTANCE;
+                }
+                value.append(c);
+                i++;
+            }
+            return Unparsed.INSTANCE;
+        }
+
+        private static Object decodeHex(String hex) {
+            if (hex.length() % 2 != 0) {
+                return Unparsed.INSTANCE;
+            }
+            byte[] blob = new byte[hex.length() / 2];
+            for (int i = 0; i < blob.length; i++) {
+                int high = Character.digit(hex.charAt(i * 2), 16);
+                int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+                if (high == -1 || low == -1) {
+                    return Unparsed.INSTANCE;
+                }
+                blob[i] = (byte) ((high << 4) | low);
+            }
+            return blob;
+        }
+
+        private static int indexOfUnquoted(String sql, char target, int start, int end) {
+            for (int i = start; i < end; i = skipQuoted(sql, i, end)) {
+                if (sql.charAt(i) == target) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the position after the quoted identifier or string starting at the position, or the next position
+         */
+        private static int skipQuoted(String sql, int position, int end) {
+            char c = sql.charAt(position);
+            char close;
+            if (c == '\'' || c == '"' || c == '`') {
+                close = c;
+            } else if (c == '[') {
+                close = ']';
+            } else {
+                return position + 1;
+            }
+            int i = position + 1;
+            while (i < end) {
+                if (sql.charAt(i) == close) {
+                    if (close != ']' && i + 1 < end && sql.charAt(i + 1) == close) {
+                        i += 2;
+                        continue;
+                    }
+                    return i + 1;
+                }
+                i++;
+            }
+            return end;
+        }
+    }
+
+    private enum Unparsed {
+        INSTANCE
+    }
+}
@@ -0,0 +1,157 @@
+package novoda.lib.sqliteprovider.migration;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import novoda.lib.sqliteprovider.util.SQLStatementIterator;
+
+/**
+ * Reads and parses migration files on a background thread, handing their statements to the database thread
+ * through a bounded queue, so that file N+1 is read while file N is executed. Files and statements come out in
+ * exactly the order they were given; the consumer asks for the statements of each file in turn with
+ * {@link #nextFile()}.
+ * <p/>
+ * Whatever ends the reading of a file, including an Error, is handed over in place of the end of the file and
+ * thrown by the consumer. Should the reader thread die without doing so, the consumer notices on its next wait
+ * instead of blocking forever while it holds the migration transaction.
+ */
+class StatementPipeline implements Closeable {
+
+    interface Files {
+        SQLStatementIterator open(String name) throws IOException;
+    }
+
+    private static final Object END_OF_FILE = new Object();
+    private static final long POLL_MILLIS = 100;
+
+    private final BlockingQueue<Object> queue;
+    private final Thread reader;
+
+    StatementPipeline(final List<String> names, final Files files, int capacity) {
+        this.queue = new ArrayBlockingQueue<Object>(capacity);
+        this.reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read(names, files);
+            }
+        }, "SQLiteProvider-migration");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void read(List<String> names, Files files) {
+        try {
+            for (String name : names) {
+                queue.put(readFile(name, files));
+            }
+        } catch (InterruptedException e) {
+            // the consumer stopped migrating
+        }
+    }
+
+    /**
+     * Queues the statements of the file and returns what ends it: {@link #END_OF_FILE} or the failure to read it.
+     */
+    private Object readFile(String name, Files files) throws InterruptedException {
+        SQLStatementIterator statements = null;
+        try {
+            statements = files.open(name);
+            String statement;
+            while ((statement = statements.nextStatement()) != null) {
+                queue.put(statement);
+            }
+            return END_OF_FILE;
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Throwable e) {
+            return e;
+        } finally {
+            closeQuietly(statements);
+        }
+    }
+
+    /**
+     * @return the statements of the next file, which must be consumed or closed before asking for the next one
+     */
+    SQLStatementIterator nextFile() {
+        return new FileStatements();
+    }
+
+    @Override
+    public void close() {
+        reader.interrupt();
+    }
+
+    private Object take() throws IOException {
+        try {
+            Object item;
+            while ((item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                if (!reader.isAlive()) {
+                    // it may have queued its last item right before ending
+                    item = queue.poll();
+                    if (item == null) {
+                        throw new IOException("The migration reader stopped before the end of the files");
+                    }
+                    break;
+                }
+            }
+            return item;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for migration statements");
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing left to read from it
+        }
+    }
+
+    private final class FileStatements implements SQLStatementIterator {
+
+        private boolean ended;
+
+        @Override
+        public String nextStatement() throws IOException {
+            if (ended) {
+                return null;
+            }
+            Object item = take();
+            if (item instanceof String) {
+                return (String) item;
+            }
+            ended = true;
+            if (item instanceof IOException) {
+                throw (IOException) item;
+            }
+            if (item instanceof RuntimeException) {
+                throw (RuntimeException) item;
+            }
+            if (item instanceof Error) {
+                throw (Error) item;
+            }
+            return null;
+        }
+
+        /**
+         * Skips the statements left in the file, as a failed migration stops executing its file.
+         */
+        @Override
+        public void close() throws IOException {
+            while (!ended) {
+                ended = !(take() instanceof String);
+            }
+        }
+    }
+}
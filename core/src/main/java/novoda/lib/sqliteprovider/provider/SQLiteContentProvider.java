@@ -29,6 +29,8 @@ import android.net.Uri;
 
 import java.util.ArrayList;
 
+import novoda.lib.sqliteprovider.sqlite.WarmUpSQLiteOpenHelper;
+
 /**
  * General purpose {@link ContentProvider} base class that uses SQLiteDatabase
  * for storage.
@@ -44,10 +46,51 @@ public abstract class SQLiteContentProvider extends ContentProvider implements S
 
     @Override
     public boolean onCreate() {
-        mOpenHelper = getDatabaseHelper(getContext());
+        final Context context = getContext();
+        if (shouldWarmUpAsynchronously()) {
+            mOpenHelper = new WarmUpSQLiteOpenHelper(context, new WarmUpSQLiteOpenHelper.Factory() {
+                @Override
+                public SQLiteOpenHelper create() {
+                    return getDatabaseHelper(context);
+                }
+            }, new WarmUpSQLiteOpenHelper.WarmUp() {
+                @Override
+                public void onWarmUp(SQLiteDatabase db) {
+                    SQLiteContentProvider.this.onWarmUp(db);
+                }
+            });
+        } else {
+            mOpenHelper = getDatabaseHelper(context);
+        }
         return true;
     }
 
+    /**
+     * Opt in to create and open the database, running its migrations, on a background thread started by
+     * {@link #startWarmUp()} instead of on the first thread to use the provider.
+     */
+    protected boolean shouldWarmUpAsynchronously() {
+        return false;
+    }
+
+    /**
+     * Starts the asynchronous warm up, if enabled. Call once the provider is ready for
+     * {@link #onWarmUp(SQLiteDatabase)}, typically at the end of {@link #onCreate()}; if it is never called, the
+     * database is opened by the first thread using it.
+     */
+    protected void startWarmUp() {
+        if (mOpenHelper instanceof WarmUpSQLiteOpenHelper) {
+            ((WarmUpSQLiteOpenHelper) mOpenHelper).start();
+        }
+    }
+
+    /**
+     * Called on the warm up thread once the database is open, to prime caches ahead of the first calls.
+     */
+    protected void onWarmUp(SQLiteDatabase db) {
+        // nothing to prime by default
+    }
+
     protected abstract SQLiteOpenHelper getDatabaseHelper(Context context);
 
     protected abstract SQLiteDatabase.CursorFactory getCursorFactory();
@@ -1,24 +1,41 @@
 package novoda.lib.sqliteprovider.provider;
 
+import android.annotation.TargetApi;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import novoda.lib.sqliteprovider.cursor.ColumnarSnapshot;
+import novoda.lib.sqliteprovider.provider.action.ExportHelper;
+import novoda.lib.sqliteprovider.provider.action.ExportHelper.Format;
 import novoda.lib.sqliteprovider.provider.action.InsertHelper;
 import novoda.lib.sqliteprovider.sqlite.MigratingSQLiteOpenHelper;
 import novoda.lib.sqliteprovider.sqlite.ExtendedSQLiteQueryBuilder;
 import novoda.lib.sqliteprovider.sqlite.SQLiteDatabaseMetaInfo;
+import novoda.lib.sqliteprovider.util.ForeignKey;
 import novoda.lib.sqliteprovider.util.Log;
-import novoda.lib.sqliteprovider.util.UriUtils;
+import novoda.lib.sqliteprovider.util.UriRoute;
+import novoda.lib.sqliteprovider.util.UriRouteTable;
 
 public class SQLiteContentProviderImpl extends SQLiteContentProvider {
 
@@ -30,7 +47,12 @@ public class SQLiteContentProviderImpl extends SQLiteContentProvider {
     private static final String DISTINCT = "distinct";
     private static final String ALLOW_YIELD = "allowYield";
 
+    private static final String READ_MODE = "r";
+    private static final String SQLITE_INTERNAL_PREFIX = "sqlite_";
+
     private InsertHelper helper;
+    private ExportHelper exportHelper;
+    private UriRouteTable routes;
     private final ImplLogger logger;
     private SQLiteDatabaseMetaInfo metaInfo;
 
@@ -42,11 +64,65 @@ public class SQLiteContentProviderImpl extends SQLiteContentProvider {
     public boolean onCreate() {
         super.onCreate();
         SQLiteOpenHelper databaseHelper = getDatabaseHelper();
-        metaInfo = new SQLiteDatabaseMetaInfo(databaseHelper);
-        helper = new InsertHelper(databaseHelper, metaInfo);
+        metaInfo = new SQLiteDatabaseMetaInfo(databaseHelper, getMetaInfoCacheFile());
+        routes = new UriRouteTable(metaInfo);
+        helper = new InsertHelper(databaseHelper, metaInfo, routes);
+        Context context = getContext();
+        exportHelper = new ExportHelper(context == null ? null : context.getCacheDir());
+        startWarmUp();
         return true;
     }
 
+    /**
+     * Reads the structure of every table but the internal ones of SQLite into the meta info, each on its own so that
+     * one that can not be read does not keep the others cold, and compiles the {@link #getWarmUpStatements()}.
+     */
+    @Override
+    protected void onWarmUp(SQLiteDatabase db) {
+        metaInfo.onBeginCall();
+        try {
+            for (String table : metaInfo.getTables()) {
+                if (table.startsWith(SQLITE_INTERNAL_PREFIX)) {
+                    continue;
+                }
+                try {
+                    metaInfo.getColumns(table);
+                    metaInfo.getColumnNames(table);
+                    metaInfo.getUniqueConstraints(table);
+                    metaInfo.getForeignKeys(table);
+                } catch (RuntimeException e) {
+                    Log.Provider.w("Could not warm up " + table + ": " + e.getMessage());
+                }
+            }
+        } finally {
+            metaInfo.onEndCall();
+        }
+        for (String sql : getWarmUpStatements()) {
+            SQLiteStatement statement = db.compileStatement(sql);
+            statement.close();
+        }
+    }
+
+    /**
+     * Statements to compile while warming up, so that they are in the statement cache of the connection by the
+     * time they are first used.
+     */
+    protected List<String> getWarmUpStatements() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Where the schema model read from the database is kept between processes, so the first queries after a
+     * launch do not have to read it again. Return null to keep it in memory only.
+     */
+    protected File getMetaInfoCacheFile() {
+        Context context = getContext();
+        if (context == null) {
+            return null;
+        }
+        return new File(context.getCacheDir(), getClass().getName() + ".meta");
+    }
+
     protected SQLiteDatabase getWritableDatabase() {
         return getDatabaseHelper().getWritableDatabase();
     }
@@ -67,7 +143,7 @@ public class SQLiteContentProviderImpl extends SQLiteContentProvider {
 
     @Override
     protected Uri insertInTransaction(Uri uri, ContentValues values) {
-        Uri insertUri = insertSilently(uri, values);
+        Uri insertUri = insertSilently(uri, routes.resolve(uri), values);
         notifyUriChange(uri);
         return insertUri;
     }
@@ -76,9 +152,10 @@ public class SQLiteContentProviderImpl extends SQLiteContentProvider {
     protected int bulkInsertInTransaction(Uri uri, ContentValues[] values) {
         String allowYield = uri.getQueryParameter(ALLOW_YIELD);
         boolean shouldYield = allowYield == null || Boolean.parseBoolean(allowYield);
+        UriRoute route = routes.resolve(uri);
         int rowsCreated = 0;
         for (ContentValues value : values) {
-            Uri insertUri = insertSilently(uri, value);
+            Uri insertUri = insertSilently(uri, route, value);
             if (insertUri != null) {
                 rowsCreated++;
             }
@@ -90,8 +167,8 @@ public class SQLiteContentProviderImpl extends SQLiteContentProvider {
         return rowsCreated;
     }
 
-    private Uri insertSilently(Uri uri, ContentValues values) {
-        long rowId = helper.insert(uri, values);
+    private Uri insertSilently(Uri uri, UriRoute route, ContentValues values) {
+        long rowId = helper.insert(uri, route, values);
         return ContentUris.withAppendedId(uri, rowId);
     }
 
@@ -99,7 +176,7 @@ public class SQLiteContentProviderImpl extends SQLiteContentProvider {
     protected int updateInTransaction(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         ContentValues insertValues = (values != null) ? new ContentValues(values) : new ContentValues();
 
-        int rowsAffected = getWritableDatabase().update(UriUtils.getItemDirID(uri), insertValues, selection, selectionArgs);
+        int rowsAffected = getWritableDatabase().update(routes.resolve(uri).getTable(), insertValues, selection, selectionArgs);
 
         if (rowsAffected > 0) {
             notifyUriChange(uri);
@@ -110,11 +187,23 @@ public class SQLiteContentProviderImpl extends SQLiteContentProvider {
     @Override
     protected int deleteInTransaction(Uri uri, String selection, String[] selectionArgs) {
         SQLiteDatabase database = getWritableDatabase();
-        int count = database.delete(UriUtils.getItemDirID(uri), selection, selectionArgs);
+        int count = database.delete(routes.resolve(uri).getTable(), selection, selectionArgs);
         notifyUriChange(uri);
         return count;
     }
 
+    @Override
+    protected void onBeginTransaction() {
+        super.onBeginTransaction();
+        metaInfo.onBeginTransaction();
+    }
+
+    @Override
+    protected void onEndTransaction() {
+        metaInfo.onEndTransaction();
+        super.onEndTransaction();
+    }
+
     @Override
     protected void notifyChange() {
 
@@ -135,44 +224,167 @@ public class SQLiteContentProviderImpl extends SQLiteContentProvider {
 
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
-        logger.logStart(uri);
+        // the schema version is checked once for every lookup the query makes
+        metaInfo.onBeginCall();
+        try {
+            logger.logStart(uri);
+
+            final ExtendedSQLiteQueryBuilder builder = getSQLiteQueryBuilder();
+            final UriRoute route = routes.resolve(uri);
+
+            final List<String> expands = uri.getQueryParameters(EXPAND);
+            final String groupBy = uri.getQueryParameter(GROUP_BY);
+            final String having = uri.getQueryParameter(HAVING);
+            final String limit = uri.getQueryParameter(LIMIT);
 
-        final ExtendedSQLiteQueryBuilder builder = getSQLiteQueryBuilder();
+            builder.setDistinct("true".equals(uri.getQueryParameter(DISTINCT)));
 
-        final List<String> expands = uri.getQueryParameters(EXPAND);
-        final String groupBy = uri.getQueryParameter(GROUP_BY);
-        final String having = uri.getQueryParameter(HAVING);
-        final String limit = uri.getQueryParameter(LIMIT);
+            final String tableName = route.getTable();
+            builder.setTables(tableName);
+            Map<String, String> autoproj = null;
 
-        builder.setDistinct("true".equals(uri.getQueryParameter(DISTINCT)));
+            if (expands.size() > 0) {
+                String[] expandedTables = expands.toArray(new String[expands.size()]);
+                builder.addLeftJoins(foreignKeysFor(tableName, expandedTables));
+                autoproj = metaInfo.getProjectionMap(tableName, expandedTables);
+                builder.setProjectionMap(autoproj);
+            }
+
+            if (route.isItem()) {
+                String where = ID + "=" + route.getId();
+                logger.logAppendWhere(where);
+                builder.appendWhere(where);
+            } else if (route.hasParent()) {
+                StringBuilder escapedWhere = new StringBuilder();
+                DatabaseUtils.appendEscapedSQLString(escapedWhere, route.getParentId());
+                String where = metaInfo.getParentColumn(route) + "=" + escapedWhere.toString();
+                logger.logAppendWhere(where);
+                builder.appendWhere(where);
+            }
 
-        final StringBuilder tableName = new StringBuilder(UriUtils.getItemDirID(uri));
-        builder.setTables(tableName.toString());
-        Map<String, String> autoproj = null;
+            logger.logEnd(projection, selection, selectionArgs, sortOrder, builder, groupBy, having, limit, autoproj);
 
-        if (expands.size() > 0) {
-            builder.addInnerJoin(expands.toArray(new String[]{}));
-            autoproj = metaInfo.getProjectionMap(tableName.toString(), expands.toArray(new String[]{}));
-            builder.setProjectionMap(autoproj);
+            Cursor cursor = builder.query(getReadableDatabase(), projection, selection, selectionArgs, groupBy, having, sortOrder, limit);
+            cursor.setNotificationUri(getContext().getContentResolver(), getNotificationUri(uri));
+            return cursor;
+        } finally {
+            metaInfo.onEndCall();
         }
+    }
 
-        if (UriUtils.isItem(uri)) {
-            String where = ID + "=" + uri.getLastPathSegment();
-            logger.logAppendWhere(where);
-            builder.appendWhere(where);
-        } else if (UriUtils.hasParent(uri)) {
-            StringBuilder escapedWhere = new StringBuilder();
-            DatabaseUtils.appendEscapedSQLString(escapedWhere, UriUtils.getParentId(uri));
-            String where = UriUtils.getParentColumnName(uri) + ID + "=" + escapedWhere.toString();
-            logger.logAppendWhere(where);
-            builder.appendWhere(where);
+    private ForeignKey[] foreignKeysFor(String table, String[] expandedTables) {
+        ForeignKey[] foreignKeys = new ForeignKey[expandedTables.length];
+        for (int i = 0; i < expandedTables.length; i++) {
+            ForeignKey foreignKey = metaInfo.getForeignKey(table, expandedTables[i]);
+            foreignKeys[i] = foreignKey != null ? foreignKey : ForeignKey.byConvention(table, expandedTables[i]);
         }
+        return foreignKeys;
+    }
 
-        logger.logEnd(projection, selection, selectionArgs, sortOrder, builder, groupBy, having, limit, autoproj);
+    /**
+     * Supports {@link ColumnarSnapshot#METHOD_QUERY}, with the Uri to query as {@code arg} and the columns to
+     * read in {@code extras}. The query goes through {@link #query(Uri, String[], String, String[], String)} so
+     * the usual Uri conventions apply. The framework does not check the read permission of the provider for
+     * {@code call}, so it is checked here before querying.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (ColumnarSnapshot.METHOD_QUERY.equals(method)) {
+            if (arg == null) {
+                throw new IllegalArgumentException("The Uri to query is missing");
+            }
+            Uri uri = Uri.parse(arg);
+            enforceReadPermission(uri);
+            return queryColumns(uri, extras);
+        }
+        return super.call(method, arg, extras);
+    }
+
+    private void enforceReadPermission(Uri uri) {
+        Context context = getContext();
+        String permission = getReadPermission();
+        if (context == null || permission == null) {
+            return;
+        }
+        if (context.checkCallingOrSelfPermission(permission) == PackageManager.PERMISSION_GRANTED
+                || context.checkCallingOrSelfUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION)
+                == PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        throw new SecurityException("Permission Denial: reading " + uri + " requires " + permission);
+    }
+
+    private Bundle queryColumns(Uri uri, Bundle request) {
+        if (request == null) {
+            throw new IllegalArgumentException("The columns to query are missing for " + uri);
+        }
+        Cursor cursor = query(uri, ColumnarSnapshot.projectionFor(request),
+                request.getString(ColumnarSnapshot.EXTRA_SELECTION),
+                request.getStringArray(ColumnarSnapshot.EXTRA_SELECTION_ARGS),
+                request.getString(ColumnarSnapshot.EXTRA_SORT_ORDER));
+        try {
+            return ColumnarSnapshot.from(cursor, request);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Streams the rows the Uri resolves to as CSV or newline delimited JSON, picked with the
+     * {@value ExportHelper#FORMAT} query parameter, e.g. {@code content://authority/fireworks?format=csv}.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        Format format = Format.fromUri(uri);
+        if (format == null) {
+            throw new FileNotFoundException("No export format requested for " + uri);
+        }
+        return openExport(uri, mode, format);
+    }
+
+    /**
+     * Exports as the {@value ExportHelper#FORMAT} of the Uri, or else as the first format matching the filter.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    @Override
+    public AssetFileDescriptor openTypedAssetFile(Uri uri, String mimeTypeFilter, Bundle opts) throws FileNotFoundException {
+        Format format = Format.fromUri(uri);
+        if (format == null) {
+            format = Format.fromMimeType(mimeTypeFilter);
+        } else if (!format.matches(mimeTypeFilter)) {
+            format = null;
+        }
+        if (format == null) {
+            throw new FileNotFoundException("Can not export " + uri + " as " + mimeTypeFilter);
+        }
+        return new AssetFileDescriptor(openExport(uri, READ_MODE, format), 0, AssetFileDescriptor.UNKNOWN_LENGTH);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    @Override
+    public String[] getStreamTypes(Uri uri, String mimeTypeFilter) {
+        Format[] candidates;
+        try {
+            Format format = Format.fromUri(uri);
+            candidates = format == null ? Format.values() : new Format[]{format};
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        List<String> types = new ArrayList<String>(candidates.length);
+        for (Format candidate : candidates) {
+            if (candidate.matches(mimeTypeFilter)) {
+                types.add(candidate.getMimeType());
+            }
+        }
+        return types.isEmpty() ? null : types.toArray(new String[types.size()]);
+    }
 
-        Cursor cursor = builder.query(getReadableDatabase(), projection, selection, selectionArgs, groupBy, having, sortOrder, limit);
-        cursor.setNotificationUri(getContext().getContentResolver(), getNotificationUri(uri));
-        return cursor;
+    private ParcelFileDescriptor openExport(Uri uri, String mode, Format format) throws FileNotFoundException {
+        if (!READ_MODE.equals(mode)) {
+            throw new FileNotFoundException("Exports are read only, can not open " + uri + " with mode " + mode);
+        }
+        return exportHelper.export(query(uri, null, null, null, null), format);
     }
 
     protected ExtendedSQLiteQueryBuilder getSQLiteQueryBuilder() {
@@ -0,0 +1,424 @@
+package novoda.lib.sqliteprovider.provider.action;
+
+import android.annotation.TargetApi;
+import android.content.ClipDescription;
+import android.database.AbstractWindowedCursor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import novoda.lib.sqliteprovider.util.Log;
+
+/**
+ * Streams the rows of a cursor into a pipe as CSV or newline delimited JSON. Rows are written straight from the
+ * cursor on a background thread while the reader consumes the other end of the pipe, so memory use is bound by
+ * the write buffer and the pipe regardless of the size of the table.
+ * <p/>
+ * Pipes only exist from Gingerbread on; before that the export is written to a temporary file first, which is
+ * deleted as soon as the reader has it open.
+ * <p/>
+ * When the cursor fails part way, the reader is told rather than left with a short export: from KitKat on the
+ * pipe is closed with the error, which the reader gets as an IOException. Before that a last row with the
+ * {@value #ERROR_MARKER} column and the message is written, {@code #error,"message"} in CSV and
+ * {@code {"#error":"message"}} in NDJSON. Exports written to a file fail to open instead.
+ */
+public class ExportHelper {
+
+    public static final String FORMAT = "format";
+    public static final String ERROR_MARKER = "#error";
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final String CHARSET = "UTF-8";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final Executor EXPORTS = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "SQLiteProvider-export");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final File temporaryDirectory;
+    private final int sdkVersion;
+
+    /**
+     * @param temporaryDirectory where exports are written before being read on devices without pipes, null for
+     *                           the default temporary directory
+     */
+    public ExportHelper(File temporaryDirectory) {
+        this(temporaryDirectory, Build.VERSION.SDK_INT);
+    }
+
+    ExportHelper(File temporaryDirectory, int sdkVersion) {
+        this.temporaryDirectory = temporaryDirectory;
+        this.sdkVersion = sdkVersion;
+    }
+
+    public enum Format {
+        CSV("text/csv"),
+        NDJSON("application/x-ndjson");
+
+        private final String mimeType;
+
+        Format(String mimeType) {
+            this.mimeType = mimeType;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * @return the format named by the {@value ExportHelper#FORMAT} query parameter of the uri, or null if there is none
+         * @throws FileNotFoundException if the uri names a format that is not supported
+         */
+        public static Format fromUri(Uri uri) throws FileNotFoundException {
+            String format = uri.getQueryParameter(FORMAT);
+            if (format == null) {
+                return null;
+            }
+            for (Format candidate : values()) {
+                if (candidate.name().equalsIgnoreCase(format)) {
+                    return candidate;
+                }
+            }
+            throw new FileNotFoundException("Unsupported export format: " + format);
+        }
+
+        /**
+         * @return the first format whose mime type matches the filter, e.g. {@code text/*}, or null if none does
+         */
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        public static Format fromMimeType(String mimeTypeFilter) {
+            for (Format candidate : values()) {
+                if (candidate.matches(mimeTypeFilter)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        public boolean matches(String mimeTypeFilter) {
+            return ClipDescription.compareMimeTypes(mimeType, mimeTypeFilter);
+        }
+    }
+
+    /**
+     * Starts writing the cursor on a background thread and returns the read end of the pipe. The cursor is
+     * closed once every row has been written or the reader has closed its end.
+     */
+    public ParcelFileDescriptor export(final Cursor cursor, final Format format) throws FileNotFoundException {
+        if (sdkVersion < Build.VERSION_CODES.GINGERBREAD) {
+            return exportThroughFile(cursor, format);
+        }
+        final boolean reliable = sdkVersion >= Build.VERSION_CODES.KITKAT;
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = reliable ? ParcelFileDescriptor.createReliablePipe() : ParcelFileDescriptor.createPipe();
+        } catch (IOException e) {
+            cursor.close();
+            throw new FileNotFoundException("Could not create export pipe: " + e.getMessage());
+        }
+        EXPORTS.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (reliable) {
+                        writeAndClose(cursor, format, pipe[1]);
+                    } else {
+                        RuntimeException failure = writeAndClose(cursor, format,
+                                new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]), true);
+                        if (failure != null) {
+                            Log.Provider.e("Export stopped, the cursor failed", failure);
+                        }
+                    }
+                } catch (IOException e) {
+                    Log.Provider.w("Export stopped, the reader went away: " + e.getMessage());
+                }
+            }
+        });
+        return pipe[0];
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void writeAndClose(Cursor cursor, Format format, ParcelFileDescriptor output) throws IOException {
+        RuntimeException failure = null;
+        try {
+            // the stream leaves the descriptor open, so that it can be closed with the failure
+            failure = writeAndClose(cursor, format, new FileOutputStream(output.getFileDescriptor()), false);
+        } finally {
+            if (failure == null) {
+                output.close();
+            } else {
+                Log.Provider.e("Export stopped, the cursor failed", failure);
+                output.closeWithError("Export failed: " + failure.getMessage());
+            }
+        }
+    }
+
+    private ParcelFileDescriptor exportThroughFile(Cursor cursor, Format format) throws FileNotFoundException {
+        File file = null;
+        RuntimeException failure;
+        try {
+            file = File.createTempFile("export", "." + format.name().toLowerCase(Locale.US), temporaryDirectory);
+            failure = writeAndClose(cursor, format, new FileOutputStream(file), false);
+            if (failure == null) {
+                return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+            }
+        } catch (IOException e) {
+            cursor.close();
+            throw new FileNotFoundException("Could not write export: " + e.getMessage());
+        } finally {
+            if (file != null) {
+                // the open descriptor keeps the content readable
+                file.delete();
+            }
+        }
+        throw new FileNotFoundException("Could not read export: " + failure.getMessage());
+    }
+
+    /**
+     * @param markFailure whether to write the {@value #ERROR_MARKER} row when the cursor fails
+     * @return the failure of the cursor that stopped the export, null once every row has been written
+     */
+    private RuntimeException writeAndClose(Cursor cursor, Format format, OutputStream output, boolean markFailure)
+            throws IOException {
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(output, CHARSET), BUFFER_SIZE);
+            RuntimeException failure = null;
+            try {
+                write(cursor, format, writer);
+            } catch (RuntimeException e) {
+                failure = e;
+                if (markFailure) {
+                    writeErrorMarker(e, format, writer);
+                }
+            }
+            writer.flush();
+            return failure;
+        } finally {
+            cursor.close();
+            closeQuietly(writer, output);
+        }
+    }
+
+    protected void write(Cursor cursor, Format format, Writer writer) throws IOException {
+        String[] columns = cursor.getColumnNames();
+        if (format == Format.CSV) {
+            writeCsvHeader(columns, writer);
+        }
+        while (cursor.moveToNext()) {
+            if (format == Format.CSV) {
+                writeCsvRow(cursor, columns.length, writer);
+            } else {
+                writeJsonRow(cursor, columns, writer);
+            }
+        }
+    }
+
+    void writeErrorMarker(RuntimeException failure, Format format, Writer writer) throws IOException {
+        String message = String.valueOf(failure.getMessage());
+        if (format == Format.CSV) {
+            // ends a row the failure may have cut short
+            writer.write("\r\n");
+            writer.write(ERROR_MARKER);
+            writer.write(',');
+            writeCsvField(message, writer);
+            writer.write("\r\n");
+        } else {
+            writer.write("\n{");
+            writeJsonString(ERROR_MARKER, writer);
+            writer.write(':');
+            writeJsonString(message, writer);
+            writer.write("}\n");
+        }
+    }
+
+    private void writeCsvHeader(String[] columns, Writer writer) throws IOException {
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeCsvField(columns[i], writer);
+        }
+        writer.write("\r\n");
+    }
+
+    private void writeCsvRow(Cursor cursor, int columnCount, Writer writer) throws IOException {
+        for (int i = 0; i < columnCount; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            switch (typeOf(cursor, i)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    writeHex(cursor.getBlob(i), writer);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    writeCsvField(cursor.getString(i), writer);
+                    break;
+                default:
+                    writer.write(cursor.getString(i));
+                    break;
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * {@link Cursor#getType(int)} only exists from Honeycomb on; before that the type is read from the window of
+     * the cursor, and values of other cursors are written as text.
+     */
+    @SuppressWarnings("deprecation")
+    private int typeOf(Cursor cursor, int column) {
+        if (sdkVersion >= Build.VERSION_CODES.HONEYCOMB) {
+            return cursor.getType(column);
+        }
+        if (cursor.isNull(column)) {
+            return Cursor.FIELD_TYPE_NULL;
+        }
+        if (cursor instanceof AbstractWindowedCursor) {
+            AbstractWindowedCursor windowed = (AbstractWindowedCursor) cursor;
+            if (windowed.isLong(column)) {
+                return Cursor.FIELD_TYPE_INTEGER;
+            }
+            if (windowed.isFloat(column)) {
+                return Cursor.FIELD_TYPE_FLOAT;
+            }
+            if (windowed.isBlob(column)) {
+                return Cursor.FIELD_TYPE_BLOB;
+            }
+        }
+        return Cursor.FIELD_TYPE_STRING;
+    }
+
+    private void writeCsvField(String value, Writer writer) throws IOException {
+        if (!needsQuoting(value)) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    private boolean needsQuoting(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeJsonRow(Cursor cursor, String[] columns, Writer writer) throws IOException {
+        writer.write('{');
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeJsonString(columns[i], writer);
+            writer.write(':');
+            switch (typeOf(cursor, i)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    writer.write("null");
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    writer.write(Long.toString(cursor.getLong(i)));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    double value = cursor.getDouble(i);
+                    writer.write(Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value));
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    writer.write('"');
+                    writeHex(cursor.getBlob(i), writer);
+                    writer.write('"');
+                    break;
+                default:
+                    writeJsonString(cursor.getString(i), writer);
+                    break;
+            }
+        }
+        writer.write("}\n");
+    }
+
+    private void writeJsonString(String value, Writer writer) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write("\\u00");
+                        writer.write(HEX[c >> 4]);
+                        writer.write(HEX[c & 0xF]);
+                    } else {
+                        writer.write(c);
+                    }
+                    break;
+            }
+        }
+        writer.write('"');
+    }
+
+    private void writeHex(byte[] blob, Writer writer) throws IOException {
+        for (byte b : blob) {
+            writer.write(HEX[(b >> 4) & 0xF]);
+            writer.write(HEX[b & 0xF]);
+        }
+    }
+
+    private void closeQuietly(Writer writer, OutputStream output) {
+        try {
+            if (writer != null) {
+                writer.close();
+            } else {
+                output.close();
+            }
+        } catch (IOException e) {
+            // reader already gone, nothing left to release
+        }
+    }
+}
@@ -9,12 +9,15 @@ import android.net.Uri;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 import novoda.lib.sqliteprovider.sqlite.MigratingSQLiteOpenHelper;
 import novoda.lib.sqliteprovider.sqlite.SQLiteDatabaseMetaInfo;
 import novoda.lib.sqliteprovider.util.Constraint;
 import novoda.lib.sqliteprovider.util.Log;
-import novoda.lib.sqliteprovider.util.UriUtils;
+import novoda.lib.sqliteprovider.util.PathIds;
+import novoda.lib.sqliteprovider.util.UriRoute;
+import novoda.lib.sqliteprovider.util.UriRouteTable;
 
 /**
  * Ability to do an Upsert rather then insert/replace as we loose the
@@ -26,17 +29,31 @@ public class InsertHelper {
 
     private final SQLiteOpenHelper dbHelper;
     private final SQLiteDatabaseMetaInfo metaInfo;
+    private final UriRouteTable routes;
 
     public InsertHelper(SQLiteOpenHelper databaseHelper, SQLiteDatabaseMetaInfo metaInfo) {
+        this(databaseHelper, metaInfo, new UriRouteTable(metaInfo));
+    }
+
+    public InsertHelper(SQLiteOpenHelper databaseHelper, SQLiteDatabaseMetaInfo metaInfo, UriRouteTable routes) {
         this.dbHelper = databaseHelper;
         this.metaInfo = metaInfo;
+        this.routes = routes;
     }
 
     public long insert(Uri uri, ContentValues values) {
+        return insert(uri, routes.resolve(uri), values);
+    }
+
+    /**
+     * Same as {@link #insert(Uri, ContentValues)} for a Uri that has already been resolved, so that a bulk insert
+     * only resolves it once.
+     */
+    public long insert(Uri uri, UriRoute route, ContentValues values) {
         ContentValues insertValues = (values != null) ? new ContentValues(values) : new ContentValues();
-        final String table = UriUtils.getItemDirID(uri);
+        final String table = route.getTable();
         final Constraint constraint = metaInfo.getFirstConstraint(table, insertValues);
-        appendParentReference(uri, insertValues);
+        appendParentReference(route, insertValues);
         long rowId = -1;
         if (constraint != null) {
             rowId = tryUpdateWithConstraint(table, constraint, insertValues);
@@ -138,8 +155,38 @@ public class InsertHelper {
     }
 
     protected void appendParentReference(Uri uri, ContentValues insertValues) {
-        if (UriUtils.hasParent(uri) && !insertValues.containsKey(UriUtils.getParentId(uri) + "_id")) {
-            insertValues.put(UriUtils.getParentColumnName(uri) + "_id", UriUtils.getParentId(uri));
+        appendParentReference(routes.resolve(uri), insertValues);
+    }
+
+    /**
+     * Puts the id of the parent found in the Uri into the column referencing the parent, as declared in the schema
+     * or following the {@code <parent>_id} convention, unless the values already hold it.
+     * For Uris nested more than one level deep, the ids of the further ancestors are put too when the table has
+     * a column referencing them.
+     */
+    protected void appendParentReference(UriRoute route, ContentValues insertValues) {
+        if (!route.hasParent()) {
+            return;
+        }
+        String parentColumn = metaInfo.getParentColumn(route);
+        if (!insertValues.containsKey(parentColumn)) {
+            insertValues.put(parentColumn, route.getParentId());
+        }
+        appendAncestorReferences(route, insertValues);
+    }
+
+    private void appendAncestorReferences(UriRoute route, ContentValues insertValues) {
+        PathIds pathIds = route.getPathIds();
+        int parentPosition = route.isItem() ? pathIds.size() - 2 : pathIds.size() - 1;
+        if (parentPosition <= 0) {
+            return;
+        }
+        Set<String> columns = metaInfo.getColumnNames(route.getTable());
+        for (int position = 0; position < parentPosition; position++) {
+            String column = UriRoute.parentColumnFor(pathIds.tableAt(position));
+            if (columns.contains(column) && !insertValues.containsKey(column)) {
+                insertValues.put(column, pathIds.idAt(position));
+            }
         }
     }
 }
@@ -0,0 +1,128 @@
+package novoda.lib.sqliteprovider.sqlite;
+
+import android.content.ContentValues;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import novoda.lib.sqliteprovider.util.Constraint;
+
+/**
+ * Finds the first unique constraint of a table fully covered by the keys of some {@link ContentValues}.
+ * <p/>
+ * Every column taking part in a constraint gets a bit, and every constraint is stored as the mask of its
+ * columns. The keys of the values are folded into a signature of the same bits, so a constraint matches when
+ * its mask is contained in the signature. With few constraint columns the answer for each signature is also
+ * memoised in a flat array.
+ * <p/>
+ * Instances are immutable apart from the memo, whose entries are idempotent, and are safe to share between
+ * threads without locking.
+ */
+final class ConstraintIndex {
+
+    private static final int MAX_MASK_COLUMNS = 64;
+    private static final int MAX_MEMO_COLUMNS = 8;
+    private static final int UNKNOWN = 0;
+    private static final int NO_MATCH = -1;
+
+    private final List<Constraint> constraints;
+    private final Map<String, Long> columnBits;
+    private final long[] masks;
+    private final int[] memo;
+
+    ConstraintIndex(List<Constraint> constraints) {
+        this.constraints = constraints;
+        this.columnBits = assignBits(constraints);
+        this.masks = columnBits == null ? null : masksFor(constraints, columnBits);
+        this.memo = columnBits != null && columnBits.size() <= MAX_MEMO_COLUMNS ? new int[1 << columnBits.size()] : null;
+    }
+
+    private static Map<String, Long> assignBits(List<Constraint> constraints) {
+        Map<String, Long> bits = new HashMap<String, Long>();
+        for (Constraint constraint : constraints) {
+            for (String column : constraint.getColumns()) {
+                if (!bits.containsKey(column)) {
+                    if (bits.size() == MAX_MASK_COLUMNS) {
+                        return null;
+                    }
+                    bits.put(column, 1L << bits.size());
+                }
+            }
+        }
+        return bits;
+    }
+
+    private static long[] masksFor(List<Constraint> constraints, Map<String, Long> columnBits) {
+        long[] masks = new long[constraints.size()];
+        for (int i = 0; i < masks.length; i++) {
+            for (String column : constraints.get(i).getColumns()) {
+                masks[i] |= columnBits.get(column);
+            }
+        }
+        return masks;
+    }
+
+    Constraint firstConstraintFor(ContentValues values) {
+        if (constraints.isEmpty()) {
+            return null;
+        }
+        if (masks == null) {
+            return firstConstraintByScan(values);
+        }
+        long signature = signatureOf(values);
+        if (memo == null) {
+            return constraintAt(firstMatch(signature));
+        }
+        int slot = (int) signature;
+        int memoised = memo[slot];
+        if (memoised == UNKNOWN) {
+            int match = firstMatch(signature);
+            memoised = match == NO_MATCH ? NO_MATCH : match + 1;
+            memo[slot] = memoised;
+        }
+        return memoised == NO_MATCH ? null : constraints.get(memoised - 1);
+    }
+
+    private long signatureOf(ContentValues values) {
+        long signature = 0;
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            Long bit = columnBits.get(entry.getKey());
+            if (bit != null) {
+                signature |= bit;
+            }
+        }
+        return signature;
+    }
+
+    private int firstMatch(long signature) {
+        for (int i = 0; i < masks.length; i++) {
+            if ((masks[i] & signature) == masks[i]) {
+                return i;
+            }
+        }
+        return NO_MATCH;
+    }
+
+    private Constraint constraintAt(int position) {
+        return position == NO_MATCH ? null : constraints.get(position);
+    }
+
+    private Constraint firstConstraintByScan(ContentValues values) {
+        for (Constraint constraint : constraints) {
+            if (isCoveredBy(constraint, values)) {
+                return constraint;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isCoveredBy(Constraint constraint, ContentValues values) {
+        for (String column : constraint.getColumns()) {
+            if (!values.containsKey(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
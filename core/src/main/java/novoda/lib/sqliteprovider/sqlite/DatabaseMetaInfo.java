@@ -2,6 +2,7 @@
 package novoda.lib.sqliteprovider.sqlite;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import novoda.lib.sqliteprovider.util.Constraint;
@@ -11,8 +12,25 @@ public interface DatabaseMetaInfo {
     enum SQLiteType {
         NULL, INTEGER, REAL, TEXT, BLOB, NUMERIC;
 
+        /**
+         * The type of a column from the type it was declared with, following the affinity rules of SQLite, so that
+         * declarations such as VARCHAR(255), BIGINT, DATETIME or none at all are understood.
+         */
         public static SQLiteType fromName(String columnType) {
-            return valueOf(columnType.toUpperCase());
+            String type = columnType == null ? "" : columnType.toUpperCase(Locale.US);
+            if (type.contains("INT")) {
+                return INTEGER;
+            }
+            if (type.contains("CHAR") || type.contains("CLOB") || type.contains("TEXT")) {
+                return TEXT;
+            }
+            if (type.length() == 0 || type.contains("BLOB")) {
+                return BLOB;
+            }
+            if (type.contains("REAL") || type.contains("FLOA") || type.contains("DOUB")) {
+                return REAL;
+            }
+            return NUMERIC;
         }
     }
 
@@ -6,9 +6,12 @@ import android.database.sqlite.*;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.text.TextUtils;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import novoda.lib.sqliteprovider.util.ForeignKey;
+
 public class ExtendedSQLiteQueryBuilder {
 
     private final SQLiteQueryBuilder delegate;
@@ -29,16 +32,36 @@ public class ExtendedSQLiteQueryBuilder {
         if (parent == null || TextUtils.isEmpty(parent)) {
             throw new IllegalStateException("You need to call setTable prior to call addInnerJoin");
         }
-        final StringBuilder table = new StringBuilder(parent);
-        for (String c : children) {
-            table.append(String.format(" LEFT JOIN %1$s ON %2$s.%3$s_id=%1$s._id", c, parent,
-                    singularize(c)));
+        ForeignKey[] foreignKeys = new ForeignKey[children.length];
+        for (int i = 0; i < children.length; i++) {
+            foreignKeys[i] = ForeignKey.byConvention(parent, children[i]);
         }
-        delegate.setTables(table.toString());
+        addLeftJoins(foreignKeys);
     }
 
-    private String singularize(String c) {
-        return (c.endsWith("s")) ? c.substring(0, c.length() - 1) : c;
+    /*
+     * select * from parent left join child1 on parent.child1_id=child1._id left join child2 on ...
+     * where each join follows the columns of its foreign key
+     */
+    public void addLeftJoins(ForeignKey... foreignKeys) {
+        final String parent = delegate.getTables();
+        if (parent == null || TextUtils.isEmpty(parent)) {
+            throw new IllegalStateException("You need to call setTable prior to call addLeftJoins");
+        }
+        final StringBuilder table = new StringBuilder(parent);
+        for (ForeignKey foreignKey : foreignKeys) {
+            table.append(" LEFT JOIN ").append(foreignKey.getReferencedTable()).append(" ON ");
+            List<String> columns = foreignKey.getColumns();
+            List<String> referencedColumns = foreignKey.getReferencedColumns();
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    table.append(" AND ");
+                }
+                table.append(foreignKey.getTable()).append('.').append(columns.get(i)).append('=')
+                        .append(foreignKey.getReferencedTable()).append('.').append(referencedColumns.get(i));
+            }
+        }
+        delegate.setTables(table.toString());
     }
 
     public String getTables() {
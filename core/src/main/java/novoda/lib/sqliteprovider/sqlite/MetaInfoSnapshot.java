@@ -0,0 +1,31 @@
+package novoda.lib.sqliteprovider.sqlite;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import novoda.lib.sqliteprovider.sqlite.DatabaseMetaInfo.SQLiteType;
+import novoda.lib.sqliteprovider.util.Constraint;
+import novoda.lib.sqliteprovider.util.ForeignKey;
+
+/**
+ * Everything {@link SQLiteDatabaseMetaInfo} knows about the schema at one {@code PRAGMA schema_version}.
+ * Values are added as they are read and never change afterwards.
+ */
+final class MetaInfoSnapshot {
+
+    final long schemaVersion;
+    final ConcurrentMap<String, List<Constraint>> constraints = new ConcurrentHashMap<String, List<Constraint>>();
+    final ConcurrentMap<String, ConstraintIndex> constraintIndexes = new ConcurrentHashMap<String, ConstraintIndex>();
+    final ConcurrentMap<String, Map<String, SQLiteType>> columns = new ConcurrentHashMap<String, Map<String, SQLiteType>>();
+    final ConcurrentMap<String, Set<String>> columnNames = new ConcurrentHashMap<String, Set<String>>();
+    final ConcurrentMap<String, Map<String, String>> projections = new ConcurrentHashMap<String, Map<String, String>>();
+    final ConcurrentMap<String, List<ForeignKey>> foreignKeys = new ConcurrentHashMap<String, List<ForeignKey>>();
+    volatile List<String> tables;
+
+    MetaInfoSnapshot(long schemaVersion) {
+        this.schemaVersion = schemaVersion;
+    }
+}
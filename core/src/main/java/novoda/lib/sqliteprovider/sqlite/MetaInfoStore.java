@@ -0,0 +1,280 @@
+package novoda.lib.sqliteprovider.sqlite;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import novoda.lib.sqliteprovider.sqlite.DatabaseMetaInfo.SQLiteType;
+import novoda.lib.sqliteprovider.util.Constraint;
+import novoda.lib.sqliteprovider.util.ForeignKey;
+import novoda.lib.sqliteprovider.util.Log;
+
+/**
+ * Keeps a {@link MetaInfoSnapshot} in a side file, so that a new process can start from the schema model of the
+ * previous one instead of querying it again table by table. The file is tagged with the schema version it was
+ * read under and is only trusted while the database still has that version.
+ * <p/>
+ * Tables, column names and types, unique constraints and foreign keys are stored, in a compact binary layout
+ * written through {@link DataOutputStream}. Saves are coalesced and done on a background thread, replacing the
+ * file atomically.
+ */
+class MetaInfoStore {
+
+    private static final int MAGIC = 0x53514c4d;
+    private static final int FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int NO_TABLES = -1;
+    private static final SQLiteType[] TYPES = SQLiteType.values();
+
+    private final File file;
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "SQLiteProvider-meta");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    MetaInfoStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the stored snapshot, or null if there is none or it can not be read, in which case the file is
+     *         deleted
+     */
+    MetaInfoSnapshot load() {
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            // every counted entry takes at least two bytes of the file
+            return read(in, file.length() / 2);
+        } catch (IOException e) {
+            return ignoreUnreadable(e);
+        } catch (RuntimeException e) {
+            return ignoreUnreadable(e);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private MetaInfoSnapshot ignoreUnreadable(Exception e) {
+        Log.Provider.w("Ignoring unreadable schema cache " + file + ": " + e.getMessage());
+        file.delete();
+        return null;
+    }
+
+    /**
+     * Schedules a save of the snapshot, unless one is already pending; the pending save picks up the latest values.
+     */
+    void scheduleSave(final SQLiteDatabaseMetaInfo metaInfo) {
+        if (!saveScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                saveScheduled.set(false);
+                save(metaInfo.snapshot());
+            }
+        });
+    }
+
+    void save(MetaInfoSnapshot snapshot) {
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), BUFFER_SIZE));
+            write(snapshot, out);
+            out.close();
+            out = null;
+            if (!temporary.renameTo(file)) {
+                throw new IOException("could not replace " + file);
+            }
+        } catch (IOException e) {
+            Log.Provider.w("Could not save schema cache " + file + ": " + e.getMessage());
+            temporary.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void write(MetaInfoSnapshot snapshot, DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(snapshot.schemaVersion);
+
+        List<String> tables = snapshot.tables;
+        if (tables == null) {
+            out.writeInt(NO_TABLES);
+        } else {
+            writeStrings(tables, out);
+        }
+
+        Map<String, Map<String, SQLiteType>> columns = new HashMap<String, Map<String, SQLiteType>>(snapshot.columns);
+        out.writeInt(columns.size());
+        for (Map.Entry<String, Map<String, SQLiteType>> table : columns.entrySet()) {
+            out.writeUTF(table.getKey());
+            out.writeInt(table.getValue().size());
+            for (Map.Entry<String, SQLiteType> column : table.getValue().entrySet()) {
+                out.writeUTF(column.getKey());
+                out.writeByte(column.getValue().ordinal());
+            }
+        }
+
+        Map<String, Set<String>> columnNames = new HashMap<String, Set<String>>(snapshot.columnNames);
+        out.writeInt(columnNames.size());
+        for (Map.Entry<String, Set<String>> table : columnNames.entrySet()) {
+            out.writeUTF(table.getKey());
+            writeStrings(table.getValue(), out);
+        }
+
+        Map<String, List<Constraint>> constraints = new HashMap<String, List<Constraint>>(snapshot.constraints);
+        out.writeInt(constraints.size());
+        for (Map.Entry<String, List<Constraint>> table : constraints.entrySet()) {
+            out.writeUTF(table.getKey());
+            out.writeInt(table.getValue().size());
+            for (Constraint constraint : table.getValue()) {
+                writeStrings(constraint.getColumns(), out);
+            }
+        }
+
+        Map<String, List<ForeignKey>> foreignKeys = new HashMap<String, List<ForeignKey>>(snapshot.foreignKeys);
+        out.writeInt(foreignKeys.size());
+        for (Map.Entry<String, List<ForeignKey>> table : foreignKeys.entrySet()) {
+            out.writeUTF(table.getKey());
+            out.writeInt(table.getValue().size());
+            for (ForeignKey foreignKey : table.getValue()) {
+                writeStrings(foreignKey.getColumns(), out);
+                out.writeUTF(foreignKey.getReferencedTable());
+                writeStrings(foreignKey.getReferencedColumns(), out);
+                out.writeBoolean(foreignKey.isDeclared());
+            }
+        }
+    }
+
+    private static MetaInfoSnapshot read(DataInputStream in, long maxCount) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("unknown format");
+        }
+        MetaInfoSnapshot snapshot = new MetaInfoSnapshot(in.readLong());
+
+        int tableCount = in.readInt();
+        if (tableCount != NO_TABLES) {
+            snapshot.tables = Collections.unmodifiableList(readStrings(checkCount(tableCount, maxCount), in));
+        }
+
+        int columnTables = readCount(in, maxCount);
+        for (int t = 0; t < columnTables; t++) {
+            String table = in.readUTF();
+            int columnCount = readCount(in, maxCount);
+            Map<String, SQLiteType> columns = new HashMap<String, SQLiteType>(columnCount);
+            for (int c = 0; c < columnCount; c++) {
+                String column = in.readUTF();
+                columns.put(column, typeFor(in.readByte()));
+            }
+            snapshot.columns.put(table, Collections.unmodifiableMap(columns));
+        }
+
+        int columnNameTables = readCount(in, maxCount);
+        for (int t = 0; t < columnNameTables; t++) {
+            String table = in.readUTF();
+            Set<String> columnNames = new HashSet<String>(readStrings(readCount(in, maxCount), in));
+            snapshot.columnNames.put(table, Collections.unmodifiableSet(columnNames));
+        }
+
+        int constraintTables = readCount(in, maxCount);
+        for (int t = 0; t < constraintTables; t++) {
+            String table = in.readUTF();
+            int constraintCount = readCount(in, maxCount);
+            List<Constraint> constraints = new ArrayList<Constraint>(constraintCount);
+            for (int c = 0; c < constraintCount; c++) {
+                constraints.add(new Constraint(readStrings(readCount(in, maxCount), in)));
+            }
+            snapshot.constraints.put(table, Collections.unmodifiableList(constraints));
+        }
+
+        int foreignKeyTables = readCount(in, maxCount);
+        for (int t = 0; t < foreignKeyTables; t++) {
+            String table = in.readUTF();
+            int foreignKeyCount = readCount(in, maxCount);
+            List<ForeignKey> foreignKeys = new ArrayList<ForeignKey>(foreignKeyCount);
+            for (int f = 0; f < foreignKeyCount; f++) {
+                List<String> columns = readStrings(readCount(in, maxCount), in);
+                String referencedTable = in.readUTF();
+                List<String> referencedColumns = readStrings(readCount(in, maxCount), in);
+                foreignKeys.add(new ForeignKey(table, columns, referencedTable, referencedColumns, in.readBoolean()));
+            }
+            snapshot.foreignKeys.put(table, Collections.unmodifiableList(foreignKeys));
+        }
+        return snapshot;
+    }
+
+    private static int readCount(DataInputStream in, long maxCount) throws IOException {
+        return checkCount(in.readInt(), maxCount);
+    }
+
+    private static int checkCount(int count, long maxCount) throws IOException {
+        if (count < 0 || count > maxCount) {
+            throw new IOException("corrupted count " + count);
+        }
+        return count;
+    }
+
+    private static SQLiteType typeFor(int ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= TYPES.length) {
+            throw new IOException("unknown column type " + ordinal);
+        }
+        return TYPES[ordinal];
+    }
+
+    private static void writeStrings(Collection<String> strings, DataOutputStream out) throws IOException {
+        List<String> copy = new ArrayList<String>(strings);
+        out.writeInt(copy.size());
+        for (String string : copy) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static List<String> readStrings(int count, DataInputStream in) throws IOException {
+        List<String> strings = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing left to release
+        }
+    }
+}
@@ -1,42 +1,210 @@
 
 package novoda.lib.sqliteprovider.sqlite;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.content.res.AssetManager;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import java.io.IOException;
 
+import novoda.lib.sqliteprovider.migration.BulkLoadProfile;
+import novoda.lib.sqliteprovider.migration.MigrationBundle;
+import novoda.lib.sqliteprovider.migration.MigrationReport;
 import novoda.lib.sqliteprovider.migration.Migrations;
 import novoda.lib.sqliteprovider.util.Log;
 
 public class MigratingSQLiteOpenHelper extends SQLiteOpenHelper {
 
     private static final String MIGRATIONS_PATH = "migrations";
+    private static final String MIGRATIONS_BUNDLE = "migrations.bundle";
+    private static final String PREBUILT_DATABASE = "migrations.db";
 
     private final Context context;
+    private final String name;
+    private final int version;
+
+    private boolean prebuiltDatabaseChecked;
+
+    private volatile MigrationReport migrationReport;
+    private MigrationReport uncommittedReport;
+    private long migratedAt;
+    private BulkLoadProfile.Applied synchronousApplied;
 
     public MigratingSQLiteOpenHelper(Context context) throws IOException {
         this(context, null);
     }
 
     public MigratingSQLiteOpenHelper(Context context, CursorFactory factory) throws IOException {
-        this(context, context.getPackageName() + ".db", factory, Migrations.getVersion(context.getAssets(), MIGRATIONS_PATH));
+        this(context, context.getPackageName() + ".db", factory, versionOf(context.getAssets()));
+    }
+
+    private static int versionOf(AssetManager assets) throws IOException {
+        MigrationBundle bundle = MigrationBundle.openIfPresent(assets, MIGRATIONS_BUNDLE);
+        if (bundle != null) {
+            return bundle.getVersion();
+        }
+        return Migrations.getVersion(assets, MIGRATIONS_PATH);
     }
 
     public MigratingSQLiteOpenHelper(Context context, String name, CursorFactory factory, int version) {
         super(context, name, factory, version);
         this.context = context;
+        this.name = name;
+        this.version = version;
+    }
+
+    @Override
+    public synchronized SQLiteDatabase getWritableDatabase() {
+        installPrebuiltDatabase();
+        SQLiteDatabase db = null;
+        try {
+            db = super.getWritableDatabase();
+        } finally {
+            onOpened(db != null);
+        }
+        return db;
+    }
+
+    @Override
+    public synchronized SQLiteDatabase getReadableDatabase() {
+        installPrebuiltDatabase();
+        SQLiteDatabase db = null;
+        try {
+            db = super.getReadableDatabase();
+        } finally {
+            onOpened(db != null);
+        }
+        return db;
+    }
+
+    /**
+     * The migrations run inside the transaction {@link SQLiteOpenHelper} wraps around onCreate and onUpgrade,
+     * which is only committed once they have returned; its commit is timed up to the return of the open call.
+     */
+    private void onOpened(boolean opened) {
+        restoreSynchronous(opened);
+        MigrationReport report = uncommittedReport;
+        if (report == null) {
+            return;
+        }
+        uncommittedReport = null;
+        if (!opened) {
+            // the transaction was rolled back
+            return;
+        }
+        report.onCommitted(System.nanoTime() - migratedAt);
+        migrationReport = report;
+        onMigrated(report);
+    }
+
+    /**
+     * Relaxes {@code synchronous} when migrations are about to run, as SQLite only allows changing it before
+     * {@link SQLiteOpenHelper} begins the transaction they run in. Only called on API 16 and above; below, the
+     * migrations run with the level the connection has.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        if (!db.isReadOnly() && db.getVersion() != version) {
+            synchronousApplied = createBulkLoadProfile().applyOutsideTransaction(db);
+        }
+    }
+
+    /**
+     * Puts {@code synchronous} back once the transaction of the migrations has been committed; a database that
+     * failed to open has been closed, taking the setting with it.
+     */
+    private void restoreSynchronous(boolean opened) {
+        BulkLoadProfile.Applied applied = synchronousApplied;
+        if (applied == null) {
+            return;
+        }
+        synchronousApplied = null;
+        if (opened) {
+            applied.restore();
+        }
+    }
+
+    /**
+     * The already migrated database to install when the database does not exist yet, as generated by the
+     * {@code prebuild<Variant>Database} task of {@code migrations.gradle}. Only the migrations newer than its
+     * version then run. Return null to always migrate from scratch.
+     */
+    protected String getPrebuiltDatabaseAsset() {
+        return PREBUILT_DATABASE;
+    }
+
+    void installPrebuiltDatabase() {
+        if (prebuiltDatabaseChecked) {
+            return;
+        }
+        prebuiltDatabaseChecked = true;
+        String asset = getPrebuiltDatabaseAsset();
+        if (asset == null || name == null) {
+            return;
+        }
+        try {
+            PrebuiltDatabase.installIfMissing(context.getAssets(), asset, context.getDatabasePath(name));
+        } catch (IOException e) {
+            Log.Migration.e("Could not install prebuilt database, migrating from scratch", e);
+        }
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
+        MigrationReport report = createMigrationReport();
         try {
-            Migrations.migrate(db, context.getAssets(), MIGRATIONS_PATH);
+            MigrationBundle bundle = MigrationBundle.openIfPresent(context.getAssets(), MIGRATIONS_BUNDLE);
+            if (bundle != null) {
+                Migrations.migrate(db, bundle, report, createBulkLoadProfile());
+            } else {
+                Migrations.migrate(db, context.getAssets(), MIGRATIONS_PATH, report, createBulkLoadProfile());
+            }
         } catch (IOException e) {
             Log.Migration.e(e);
         }
+        uncommittedReport = report;
+        migratedAt = System.nanoTime();
+    }
+
+    /**
+     * @return the report of the migrations run when the database was created or upgraded, or null if it was
+     * already up to date when opened
+     */
+    public MigrationReport getMigrationReport() {
+        return migrationReport;
+    }
+
+    /**
+     * Override to change the threshold over which statements are reported as slow.
+     */
+    protected MigrationReport createMigrationReport() {
+        return new MigrationReport();
+    }
+
+    /**
+     * Override to tune the connection settings used while migrating, which are restored once the migrations have
+     * run. Its {@code synchronous} level is only applied on API 16 and above.
+     */
+    protected BulkLoadProfile createBulkLoadProfile() {
+        return new BulkLoadProfile();
+    }
+
+    /**
+     * Called once the migrations have run and been committed; logs the report, and its slow statements as warnings.
+     */
+    protected void onMigrated(MigrationReport report) {
+        if (Log.Migration.infoLoggingEnabled()) {
+            Log.Migration.i(report.toString());
+        }
+        for (MigrationReport.SlowStatement statement : report.getSlowStatements()) {
+            Log.Migration.w("Slow migration statement, " + statement);
+        }
     }
 
     @Override
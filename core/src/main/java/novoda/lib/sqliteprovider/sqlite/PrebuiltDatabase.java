@@ -0,0 +1,134 @@
+package novoda.lib.sqliteprovider.sqlite;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import novoda.lib.sqliteprovider.util.Log;
+
+/**
+ * Installs a database shipped as an asset, already migrated and stamped with its version in
+ * {@code PRAGMA user_version}, in place of a database that does not exist yet. Opening it afterwards only runs the
+ * migrations newer than the shipped version.
+ * <p/>
+ * The asset is copied channel to channel: straight from the APK with {@link FileChannel#transferTo} when it is
+ * stored uncompressed, which the {@code migrations.gradle} script arranges, and through a stream otherwise. It is
+ * copied to a temporary file first and renamed into place once complete, after deleting any journal left behind by
+ * a previous database of the same name, which SQLite would otherwise roll into the installed one.
+ */
+public final class PrebuiltDatabase {
+
+    private static final long CHUNK_SIZE = 1024 * 1024;
+    private static final String[] SIDECAR_SUFFIXES = {"-journal", "-wal", "-shm"};
+
+    private PrebuiltDatabase() {
+        // Util class
+    }
+
+    /**
+     * @return true if the database was copied from the asset, false if it already existed or there is no such asset
+     */
+    public static boolean installIfMissing(AssetManager assets, String assetPath, File database) throws IOException {
+        if (database.exists()) {
+            return false;
+        }
+        File directory = database.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        deleteSidecars(database);
+        File temporary = new File(database.getPath() + ".tmp");
+        boolean copied;
+        try {
+            copied = copy(assets, assetPath, temporary);
+        } catch (IOException e) {
+            temporary.delete();
+            throw e;
+        }
+        if (!copied) {
+            return false;
+        }
+        if (!temporary.renameTo(database)) {
+            temporary.delete();
+            throw new IOException("Could not move prebuilt database to " + database);
+        }
+        if (Log.Migration.infoLoggingEnabled()) {
+            Log.Migration.i("installed prebuilt database " + assetPath + " as " + database);
+        }
+        return true;
+    }
+
+    private static void deleteSidecars(File database) throws IOException {
+        for (String suffix : SIDECAR_SUFFIXES) {
+            File sidecar = new File(database.getPath() + suffix);
+            if (sidecar.exists() && !sidecar.delete()) {
+                throw new IOException("Could not delete stale " + sidecar);
+            }
+        }
+    }
+
+    private static boolean copy(AssetManager assets, String assetPath, File target) throws IOException {
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = assets.openFd(assetPath);
+        } catch (FileNotFoundException e) {
+            // missing, or compressed in the APK and therefore not mappable
+            return copyStream(assets, assetPath, target);
+        }
+        FileInputStream in = descriptor.createInputStream();
+        FileOutputStream out = new FileOutputStream(target);
+        try {
+            FileChannel source = in.getChannel();
+            FileChannel destination = out.getChannel();
+            long start = descriptor.getStartOffset();
+            long length = descriptor.getLength();
+            long position = 0;
+            while (position < length) {
+                long transferred = source.transferTo(start + position, Math.min(CHUNK_SIZE, length - position), destination);
+                if (transferred <= 0) {
+                    throw new IOException("Prebuilt database " + assetPath + " ended after " + position + " bytes");
+                }
+                position += transferred;
+            }
+            destination.force(false);
+            return true;
+        } finally {
+            out.close();
+            in.close();
+            descriptor.close();
+        }
+    }
+
+    private static boolean copyStream(AssetManager assets, String assetPath, File target) throws IOException {
+        InputStream in;
+        try {
+            in = assets.open(assetPath);
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+        FileOutputStream out = new FileOutputStream(target);
+        try {
+            ReadableByteChannel source = Channels.newChannel(in);
+            FileChannel destination = out.getChannel();
+            long position = 0;
+            long transferred;
+            while ((transferred = destination.transferFrom(source, position, CHUNK_SIZE)) > 0) {
+                position += transferred;
+            }
+            destination.force(false);
+            return true;
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+}
@@ -1,37 +1,153 @@
 package novoda.lib.sqliteprovider.sqlite;
 
 import android.content.ContentValues;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteOpenHelper;
 
-import java.util.HashMap;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import novoda.lib.sqliteprovider.util.Constraint;
-import novoda.lib.sqliteprovider.util.DBUtils;
+import novoda.lib.sqliteprovider.util.DatabaseStructure;
+import novoda.lib.sqliteprovider.util.ForeignKey;
+import novoda.lib.sqliteprovider.util.UriRoute;
+import novoda.lib.sqliteprovider.util.UriRouteTable;
 
-public class SQLiteDatabaseMetaInfo implements DatabaseMetaInfo {
+/**
+ * Caches the structure of the database, including the graph of foreign keys used to join tables. Every cached value belongs to a snapshot tagged with the
+ * {@code PRAGMA schema_version} it was read under; when the version changes, because of a migration or a table
+ * created at runtime, the whole snapshot is dropped at once and values are read again on demand.
+ * <p/>
+ * The schema version is checked once per transaction begun through {@link #onBeginTransaction()}, once per
+ * provider call begun through {@link #onBeginCall()}, and on every access made outside of both.
+ * <p/>
+ * Given a cache file, the schema model is also persisted there and loaded again by the next process, which then
+ * only has to confirm the schema version before using it.
+ */
+public class SQLiteDatabaseMetaInfo implements DatabaseMetaInfo, UriRouteTable.KnownTables {
+
+    private static final String PRAGMA_SCHEMA_VERSION = "PRAGMA schema_version";
 
-    private final Map<String, List<Constraint>> constraints = new HashMap<String, List<Constraint>>();
     private final SQLiteOpenHelper helper;
+    private final MetaInfoStore store;
+    private final ThreadLocal<Boolean> validatedInTransaction = new ThreadLocal<Boolean>();
+    private final ThreadLocal<int[]> validatedCalls = new ThreadLocal<int[]>();
+
+    private volatile MetaInfoSnapshot snapshot = new MetaInfoSnapshot(-1);
 
     public SQLiteDatabaseMetaInfo(SQLiteOpenHelper helper) {
+        this(helper, null);
+    }
+
+    /**
+     * @param cacheFile where to persist the schema model, or null to only keep it in memory
+     */
+    public SQLiteDatabaseMetaInfo(SQLiteOpenHelper helper, File cacheFile) {
         this.helper = helper;
+        this.store = cacheFile == null ? null : new MetaInfoStore(cacheFile);
+        if (store != null) {
+            MetaInfoSnapshot stored = store.load();
+            if (stored != null) {
+                snapshot = stored;
+            }
+        }
     }
 
     @Override
     public Map<String, SQLiteType> getColumns(String table) {
-        return DBUtils.getFields(helper.getReadableDatabase(), table);
+        MetaInfoSnapshot current = current();
+        Map<String, SQLiteType> columns = current.columns.get(table);
+        if (columns == null) {
+            columns = structure().columnsFor(table);
+            current.columns.put(table, columns);
+            onSnapshotChanged();
+        }
+        return columns;
+    }
+
+    public Set<String> getColumnNames(String table) {
+        MetaInfoSnapshot current = current();
+        Set<String> columnNames = current.columnNames.get(table);
+        if (columnNames == null) {
+            columnNames = structure().columnNamesFor(table);
+            current.columnNames.put(table, columnNames);
+            onSnapshotChanged();
+        }
+        return columnNames;
     }
 
     @Override
     public List<String> getTables() {
-        return DBUtils.getTables(helper.getReadableDatabase());
+        MetaInfoSnapshot current = current();
+        List<String> tables = current.tables;
+        if (tables == null) {
+            tables = structure().tables();
+            current.tables = tables;
+            onSnapshotChanged();
+        }
+        return tables;
+    }
+
+    /**
+     * Only consults the tables already read, without checking the schema version or reading them, so resolving a
+     * Uri never touches the database. Until the tables are read, by the warm up or a lookup, routes are resolved
+     * without being kept.
+     */
+    @Override
+    public boolean isKnownTable(String table) {
+        List<String> tables = snapshot.tables;
+        return tables != null && tables.contains(table);
     }
 
     @Override
     public List<String> getForeignTables(String table) {
-        return DBUtils.getForeignTables(helper.getReadableDatabase(), table);
+        List<ForeignKey> foreignKeys = getForeignKeys(table);
+        List<String> foreignTables = new ArrayList<String>(foreignKeys.size());
+        for (ForeignKey foreignKey : foreignKeys) {
+            foreignTables.add(foreignKey.getReferencedTable());
+        }
+        return foreignTables;
+    }
+
+    /**
+     * @return the keys of the table, declared ones first, then those following the {@code <singular>_id} convention
+     */
+    public List<ForeignKey> getForeignKeys(String table) {
+        MetaInfoSnapshot current = current();
+        List<ForeignKey> foreignKeys = current.foreignKeys.get(table);
+        if (foreignKeys == null) {
+            foreignKeys = structure().foreignKeysFor(table);
+            current.foreignKeys.put(table, foreignKeys);
+            onSnapshotChanged();
+        }
+        return foreignKeys;
+    }
+
+    /**
+     * @return the first key from the table to the referenced table, or null if they are not related
+     */
+    public ForeignKey getForeignKey(String table, String referencedTable) {
+        for (ForeignKey foreignKey : getForeignKeys(table)) {
+            if (foreignKey.getReferencedTable().equals(referencedTable)) {
+                return foreignKey;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the column of the route's table referencing the {@code _id} of its parent according to the schema,
+     * falling back to the {@code <parent>_id} convention of {@link UriRoute#getParentColumn()}
+     */
+    public String getParentColumn(UriRoute route) {
+        ForeignKey foreignKey = getForeignKey(route.getTable(), route.getParentTable());
+        if (foreignKey != null && foreignKey.referencesId()) {
+            return foreignKey.getColumns().get(0);
+        }
+        return route.getParentColumn();
     }
 
     @Override
@@ -44,36 +160,128 @@ public class SQLiteDatabaseMetaInfo implements DatabaseMetaInfo {
         helper.getWritableDatabase().setVersion(version);
     }
 
-
     @Override
     public Map<String, String> getProjectionMap(String parent, String... foreignTables) {
-        return DBUtils.getProjectionMap(helper.getReadableDatabase(), parent, foreignTables);
+        MetaInfoSnapshot current = current();
+        String key = projectionKey(parent, foreignTables);
+        Map<String, String> projection = current.projections.get(key);
+        if (projection == null) {
+            projection = structure().projectionMap(parent, foreignTables);
+            current.projections.put(key, projection);
+        }
+        return projection;
+    }
+
+    private static String projectionKey(String parent, String... foreignTables) {
+        StringBuilder key = new StringBuilder(parent);
+        for (String foreignTable : foreignTables) {
+            key.append(',').append(foreignTable);
+        }
+        return key.toString();
     }
 
     @Override
     public List<Constraint> getUniqueConstraints(String table) {
-        if (!constraints.containsKey(table)) {
-            constraints.put(table, DBUtils.getUniqueConstraints(helper.getReadableDatabase(), table));
+        MetaInfoSnapshot current = current();
+        List<Constraint> constraints = current.constraints.get(table);
+        if (constraints == null) {
+            constraints = structure().uniqueConstraintsFor(table);
+            current.constraints.put(table, constraints);
+            onSnapshotChanged();
         }
-        return constraints.get(table);
+        return constraints;
     }
 
+    /**
+     * @return the first unique constraint of the table whose columns are all present in the values, or null
+     */
     public Constraint getFirstConstraint(String table, ContentValues values) {
-        List<Constraint> constraints = getUniqueConstraints(table);
-        if (constraints == null) {
-            return null;
-        }
-        for (Constraint constraint : constraints) {
-            boolean isValidConstraint = true;
-            for (String column : constraint.getColumns()) {
-                if (!values.containsKey(column)) {
-                    isValidConstraint = false;
-                }
-            }
-            if (isValidConstraint) {
-                return constraint;
-            }
+        MetaInfoSnapshot current = current();
+        ConstraintIndex index = current.constraintIndexes.get(table);
+        if (index == null) {
+            index = new ConstraintIndex(getUniqueConstraints(table));
+            current.constraintIndexes.put(table, index);
         }
-        return null;
+        return index.firstConstraintFor(values);
+    }
+
+    /**
+     * Checks the schema version once for the transaction being begun on the calling thread; accesses made until
+     * {@link #onEndTransaction()} trust the cached values.
+     */
+    public void onBeginTransaction() {
+        refreshIfSchemaChanged();
+        validatedInTransaction.set(Boolean.TRUE);
+    }
+
+    public void onEndTransaction() {
+        validatedInTransaction.remove();
+    }
+
+    /**
+     * Checks the schema version once for the provider call, like a query, made on the calling thread; accesses
+     * made until the matching {@link #onEndCall()} trust the cached values. Calls may nest, only the outermost
+     * one checks.
+     */
+    public void onBeginCall() {
+        int[] depth = validatedCalls.get();
+        if (depth == null) {
+            depth = new int[1];
+            validatedCalls.set(depth);
+        }
+        if (depth[0]++ == 0 && !isValidatedInTransaction()) {
+            refreshIfSchemaChanged();
+        }
+    }
+
+    public void onEndCall() {
+        int[] depth = validatedCalls.get();
+        if (depth != null && --depth[0] == 0) {
+            validatedCalls.remove();
+        }
+    }
+
+    /**
+     * Drops every cached value if the schema changed since they were read.
+     */
+    public void refreshIfSchemaChanged() {
+        long schemaVersion = querySchemaVersion();
+        if (snapshot.schemaVersion != schemaVersion) {
+            snapshot = new MetaInfoSnapshot(schemaVersion);
+        }
+    }
+
+    private long querySchemaVersion() {
+        Cursor cursor = helper.getReadableDatabase().rawQuery(PRAGMA_SCHEMA_VERSION, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    MetaInfoSnapshot snapshot() {
+        return snapshot;
+    }
+
+    private void onSnapshotChanged() {
+        if (store != null) {
+            store.scheduleSave(this);
+        }
+    }
+
+    private MetaInfoSnapshot current() {
+        if (validatedCalls.get() == null && !isValidatedInTransaction()) {
+            refreshIfSchemaChanged();
+        }
+        return snapshot;
+    }
+
+    private boolean isValidatedInTransaction() {
+        return Boolean.TRUE.equals(validatedInTransaction.get()) && helper.getReadableDatabase().inTransaction();
+    }
+
+    private DatabaseStructure structure() {
+        return new DatabaseStructure(helper.getReadableDatabase());
     }
 }
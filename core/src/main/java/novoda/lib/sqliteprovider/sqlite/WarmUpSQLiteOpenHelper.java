@@ -0,0 +1,204 @@
+package novoda.lib.sqliteprovider.sqlite;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import novoda.lib.sqliteprovider.util.Log;
+
+/**
+ * Creates and opens the real helper of a provider on a background thread, running its migrations there, and
+ * hands out its databases once that is done. Callers arriving before the database is open wait for it; later
+ * callers go straight through.
+ * <p/>
+ * The warm up starts with {@link #start()}, or on the calling thread at the first access if it was never
+ * started. Once the database is open, {@link WarmUp#onWarmUp(SQLiteDatabase)} runs on the background thread to
+ * prime caches, without holding back callers. If opening fails, the callers waiting for it get the failure and
+ * the next access tries to open the database again.
+ * <p/>
+ * The helper has no database name of its own: {@link #getDatabaseName()} and the connection settings are those of
+ * the helper created by the factory.
+ */
+public class WarmUpSQLiteOpenHelper extends SQLiteOpenHelper {
+
+    public interface Factory {
+        SQLiteOpenHelper create();
+    }
+
+    public interface WarmUp {
+        void onWarmUp(SQLiteDatabase db);
+    }
+
+    private static final int UNUSED_VERSION = 1;
+
+    private final Factory factory;
+    private final WarmUp warmUp;
+    private final AtomicReference<Attempt> attempt = new AtomicReference<Attempt>();
+
+    private volatile SQLiteOpenHelper delegate;
+
+    public WarmUpSQLiteOpenHelper(Context context, Factory factory, WarmUp warmUp) {
+        super(context, null, null, UNUSED_VERSION);
+        this.factory = factory;
+        this.warmUp = warmUp;
+    }
+
+    public void start() {
+        final Attempt first = new Attempt();
+        if (attempt.compareAndSet(null, first)) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    SQLiteDatabase db = open(first);
+                    if (db != null) {
+                        warmUp(db);
+                    }
+                }
+            }, "SQLiteProvider-warmup").start();
+        }
+    }
+
+    private SQLiteDatabase open(Attempt current) {
+        try {
+            long start = System.nanoTime();
+            SQLiteOpenHelper helper = factory.create();
+            SQLiteDatabase db = helper.getWritableDatabase();
+            delegate = helper;
+            if (Log.Provider.infoLoggingEnabled()) {
+                Log.Provider.i("database opened in " + (System.nanoTime() - start) / 1000000 + "ms");
+            }
+            return db;
+        } catch (RuntimeException e) {
+            return failed(current, e);
+        } catch (Error e) {
+            return failed(current, e);
+        } finally {
+            current.done.countDown();
+        }
+    }
+
+    /**
+     * Records the failure before the callers waiting for the attempt are released, whatever it is, so that they
+     * get it rather than a helper that was never set.
+     */
+    private static SQLiteDatabase failed(Attempt current, Throwable failure) {
+        Log.Provider.e("Could not open the database", failure);
+        current.failure = failure;
+        return null;
+    }
+
+    private void warmUp(SQLiteDatabase db) {
+        try {
+            warmUp.onWarmUp(db);
+        } catch (RuntimeException e) {
+            Log.Provider.w("Warm up stopped: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the opened helper, waiting for the warm up to open it if needed
+     * @throws RuntimeException the failure of the attempt waited for, or the Error it ended with; the next call tries
+     *                          to open the database again
+     */
+    public SQLiteOpenHelper getDelegate() {
+        SQLiteOpenHelper helper = delegate;
+        if (helper != null) {
+            return helper;
+        }
+        Attempt current = attempt.get();
+        if (current == null || current.hasFailed()) {
+            Attempt next = new Attempt();
+            if (attempt.compareAndSet(current, next)) {
+                open(next);
+            }
+            current = attempt.get();
+        }
+        current.await();
+        Throwable failure = current.failure;
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+        return delegate;
+    }
+
+    @Override
+    public SQLiteDatabase getWritableDatabase() {
+        return getDelegate().getWritableDatabase();
+    }
+
+    @Override
+    public SQLiteDatabase getReadableDatabase() {
+        return getDelegate().getReadableDatabase();
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    @Override
+    public String getDatabaseName() {
+        return getDelegate().getDatabaseName();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void setWriteAheadLoggingEnabled(boolean enabled) {
+        getDelegate().setWriteAheadLoggingEnabled(enabled);
+    }
+
+    @Override
+    public synchronized void close() {
+        Attempt current = attempt.get();
+        if (current == null) {
+            return;
+        }
+        current.await();
+        SQLiteOpenHelper helper = delegate;
+        if (helper != null) {
+            helper.close();
+        }
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // the delegate creates the database
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // the delegate upgrades the database
+    }
+
+    /**
+     * One attempt at opening the database, which the callers arriving while it runs wait for.
+     */
+    private static final class Attempt {
+
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Throwable failure;
+
+        boolean hasFailed() {
+            return done.getCount() == 0 && failure != null;
+        }
+
+        void await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
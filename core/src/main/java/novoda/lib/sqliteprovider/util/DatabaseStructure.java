@@ -6,8 +6,10 @@ import android.database.sqlite.SQLiteDatabase;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 import novoda.lib.sqliteprovider.sqlite.DatabaseMetaInfo.SQLiteType;
@@ -19,6 +21,12 @@ public class DatabaseStructure {
     private static final String PRAGMA_TABLE_INFO = "PRAGMA table_info('%1$s');";
     private static final String PRAGMA_INDEX_LIST = "PRAGMA index_list('%1$s');";
     private static final String PRAGMA_INDEX_INFO = "PRAGMA index_info('%1$s');";
+    private static final String PRAGMA_FOREIGN_KEY_LIST = "PRAGMA foreign_key_list('%1$s');";
+    private static final String COLUMN_FOREIGN_KEY_ID = "id";
+    private static final String COLUMN_FOREIGN_KEY_TABLE = "table";
+    private static final String COLUMN_FOREIGN_KEY_FROM = "from";
+    private static final String COLUMN_FOREIGN_KEY_TO = "to";
+    private static final String ID = "_id";
     private static final String COLUMN_PRIMARY_KEY_INDEX = "pk";
     private static final String COLUMN_NAME = "name";
     private static final String COLUMN_TYPE = "type";
@@ -71,6 +79,24 @@ public class DatabaseStructure {
         return Collections.unmodifiableMap(columns);
     }
 
+    /**
+     * Unlike {@link #columnsFor(String)} this does not interpret the declared column types, so it works for any
+     * table whatever types it declares.
+     */
+    public Set<String> columnNamesFor(String table) {
+        Cursor columnsCursor = queryTableColumnsFor(table);
+        try {
+            Set<String> columnNames = new HashSet<>(columnsCursor.getCount());
+            int nameIndex = columnsCursor.getColumnIndexOrThrow(COLUMN_NAME);
+            while (columnsCursor.moveToNext()) {
+                columnNames.add(columnsCursor.getString(nameIndex));
+            }
+            return Collections.unmodifiableSet(columnNames);
+        } finally {
+            columnsCursor.close();
+        }
+    }
+
     private Cursor queryTableColumnsFor(String table) {
         return database.rawQuery(String.format(PRAGMA_TABLE_INFO, table), null);
     }
@@ -94,23 +120,94 @@ public class DatabaseStructure {
     }
 
     public List<String> foreignTablesFor(String table) {
-        Cursor columnsCursor = queryTableColumnsFor(table);
-        List<String> allTables = tables();
-        List<String> foreignTables = parseForeignTablesFor(columnsCursor, allTables);
-        columnsCursor.close();
+        List<ForeignKey> foreignKeys = foreignKeysFor(table);
+        List<String> foreignTables = new ArrayList<>(foreignKeys.size());
+        for (ForeignKey foreignKey : foreignKeys) {
+            foreignTables.add(foreignKey.getReferencedTable());
+        }
         return Collections.unmodifiableList(foreignTables);
     }
 
-    private List<String> parseForeignTablesFor(Cursor columnsCursor, List<String> allTables) {
-        List<String> foreignTables = new ArrayList<>();
-        while (columnsCursor.moveToNext()) {
-            String columnName = columnsCursor.getString(columnsCursor.getColumnIndexOrThrow(COLUMN_NAME));
+    /**
+     * The foreign keys declared on the table, followed by the ones guessed from the {@code <singular>_id}
+     * naming convention for columns not covered by a declared key.
+     */
+    public List<ForeignKey> foreignKeysFor(String table) {
+        List<ForeignKey> foreignKeys = new ArrayList<>(declaredForeignKeysFor(table));
+        Set<String> declaredColumns = new HashSet<>();
+        for (ForeignKey foreignKey : foreignKeys) {
+            declaredColumns.addAll(foreignKey.getColumns());
+        }
+        foreignKeys.addAll(conventionalForeignKeysFor(table, declaredColumns));
+        return Collections.unmodifiableList(foreignKeys);
+    }
+
+    private List<ForeignKey> declaredForeignKeysFor(String table) {
+        Cursor foreignKeyCursor = database.rawQuery(String.format(PRAGMA_FOREIGN_KEY_LIST, table), null);
+        try {
+            return parseForeignKeysFrom(table, foreignKeyCursor);
+        } finally {
+            foreignKeyCursor.close();
+        }
+    }
+
+    private List<ForeignKey> parseForeignKeysFrom(String table, Cursor foreignKeyCursor) {
+        List<ForeignKey> foreignKeys = new ArrayList<>();
+        int currentId = -1;
+        String referencedTable = null;
+        List<String> columns = null;
+        List<String> referencedColumns = null;
+        while (foreignKeyCursor.moveToNext()) {
+            int id = foreignKeyCursor.getInt(foreignKeyCursor.getColumnIndexOrThrow(COLUMN_FOREIGN_KEY_ID));
+            if (id != currentId) {
+                if (columns != null) {
+                    foreignKeys.add(new ForeignKey(table, columns, referencedTable, referencedColumns, true));
+                }
+                currentId = id;
+                referencedTable = foreignKeyCursor.getString(foreignKeyCursor.getColumnIndexOrThrow(COLUMN_FOREIGN_KEY_TABLE));
+                columns = new ArrayList<>();
+                referencedColumns = new ArrayList<>();
+            }
+            columns.add(foreignKeyCursor.getString(foreignKeyCursor.getColumnIndexOrThrow(COLUMN_FOREIGN_KEY_FROM)));
+            String referencedColumn = foreignKeyCursor.getString(foreignKeyCursor.getColumnIndexOrThrow(COLUMN_FOREIGN_KEY_TO));
+            // a reference without columns points at the primary key, which by convention is _id
+            referencedColumns.add(referencedColumn == null ? ID : referencedColumn);
+        }
+        if (columns != null) {
+            foreignKeys.add(new ForeignKey(table, columns, referencedTable, referencedColumns, true));
+        }
+        return foreignKeys;
+    }
+
+    private List<ForeignKey> conventionalForeignKeysFor(String table, Set<String> declaredColumns) {
+        List<ForeignKey> foreignKeys = new ArrayList<>();
+        List<String> allTables = null;
+        for (String columnName : columnNamesInOrderFor(table)) {
+            if (!isForeignKey(columnName) || declaredColumns.contains(columnName)) {
+                continue;
+            }
+            if (allTables == null) {
+                allTables = tables();
+            }
             String foreignTable = foreignTableFor(columnName, allTables);
             if (foreignTable != null) {
-                foreignTables.add(foreignTable);
+                foreignKeys.add(ForeignKey.byConvention(table, columnName, foreignTable));
             }
         }
-        return foreignTables;
+        return foreignKeys;
+    }
+
+    private List<String> columnNamesInOrderFor(String table) {
+        Cursor columnsCursor = queryTableColumnsFor(table);
+        try {
+            List<String> columnNames = new ArrayList<>(columnsCursor.getCount());
+            while (columnsCursor.moveToNext()) {
+                columnNames.add(columnsCursor.getString(columnsCursor.getColumnIndexOrThrow(COLUMN_NAME)));
+            }
+            return columnNames;
+        } finally {
+            columnsCursor.close();
+        }
     }
 
     private String foreignTableFor(String columnName, List<String> tables) {
@@ -127,7 +224,7 @@ public class DatabaseStructure {
     }
 
     private boolean isForeignKey(String columnName) {
-        return columnName.endsWith("_id");
+        return columnName.endsWith(ID) && !columnName.equals(ID);
     }
 
     public List<Constraint> uniqueConstraintsFor(String table) {
@@ -5,9 +5,17 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
+import novoda.rest.database.SQLiteIndex;
+import novoda.rest.database.SQLiteIndexedTableCreator;
+import novoda.rest.database.SQLiteRelationalTableCreator;
+import novoda.rest.database.SQLiteRelationship;
 import novoda.rest.database.SQLiteTableCreator;
 import novoda.rest.database.SQLiteType;
+import novoda.rest.database.SQLiteUtil;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map.Entry;
 
 public class DatabaseUtils extends android.database.DatabaseUtils {
@@ -52,11 +60,82 @@ public class DatabaseUtils extends android.database.DatabaseUtils {
             sql.append((creator.onConflict(f) != null && creator.isUnique(f)) ? " ON CONFLICT "
                     + creator.onConflict(f) : "");
         }
+        String parentColumn = getParentColumn(creator);
+        if (parentColumn != null && !parentColumn.equals(primaryKey)
+                && !Arrays.asList(creator.getTableFields()).contains(parentColumn)) {
+            sql.append(", ").append(parentColumn).append(" ").append(creator.getParentType().name());
+        }
+        if (parentColumn != null && getRelationship(creator) == SQLiteRelationship.FOREIGN_KEY) {
+            sql.append(", FOREIGN KEY(").append(SQLiteUtil.quote(parentColumn)).append(") REFERENCES ")
+                    .append(SQLiteUtil.quote(creator.getParentTableName())).append('(')
+                    .append(SQLiteUtil.quote(creator.getParentPrimaryKey())).append(") ON DELETE CASCADE");
+        }
 
         sql.append(");");
         return sql.toString();
     }
 
+    /**
+     * @return the statements creating the indexes of the table: one per field
+     *         flagged by shouldIndex, one on the parent column of a one to many
+     *         table and those declared by a {@link SQLiteIndexedTableCreator}
+     */
+    public static List<String> getIndexStatements(SQLiteTableCreator creator) {
+        String primaryKey = creator.getPrimaryKey() == null ? "_id" : creator.getPrimaryKey();
+        List<SQLiteIndex> indexes = new ArrayList<SQLiteIndex>();
+        for (String f : creator.getTableFields()) {
+            // the primary key and unique fields are already indexed by their constraint
+            if (!f.equals(primaryKey) && !creator.isUnique(f) && creator.shouldIndex(f)) {
+                indexes.add(new SQLiteIndex(f));
+            }
+        }
+        String parentColumn = getParentColumn(creator);
+        if (parentColumn != null && !parentColumn.equals(primaryKey) && !creator.isUnique(parentColumn)
+                && !(Arrays.asList(creator.getTableFields()).contains(parentColumn) && creator.shouldIndex(parentColumn))) {
+            indexes.add(new SQLiteIndex(parentColumn));
+        }
+        if (creator instanceof SQLiteIndexedTableCreator) {
+            SQLiteIndex[] declared = ((SQLiteIndexedTableCreator) creator).getIndexes();
+            if (declared != null) {
+                indexes.addAll(Arrays.asList(declared));
+            }
+        }
+        List<String> statements = new ArrayList<String>(indexes.size());
+        for (SQLiteIndex index : indexes) {
+            statements.add(getIndexStatement(creator.getTableName(), index));
+        }
+        return statements;
+    }
+
+    /**
+     * Names the index after its table and columns, each preceded by its length, so that no two different indexes
+     * share a name: {@code a_b(c)} and {@code a(b_c)} give {@code 3a_b_1c_idx} and {@code 1a_3b_c_idx}. As the
+     * index is created if not exists, a shared name would silently leave the second one out.
+     */
+    static String getIndexStatement(String table, SQLiteIndex index) {
+        StringBuilder name = new StringBuilder().append(table.length()).append(table);
+        StringBuilder columns = new StringBuilder();
+        for (String column : index.getColumns()) {
+            name.append('_').append(column.length()).append(column);
+            columns.append(columns.length() == 0 ? "" : ", ").append(SQLiteUtil.quote(column));
+        }
+        name.append(index.isUnique() ? "_unique" : "_idx");
+        return new StringBuilder("CREATE ").append(index.isUnique() ? "UNIQUE " : "").append("INDEX IF NOT EXISTS ")
+                .append(SQLiteUtil.quote(name.toString())).append(" ON ").append(SQLiteUtil.quote(table))
+                .append(" (").append(columns).append(");").toString();
+    }
+
+    public static SQLiteRelationship getRelationship(SQLiteTableCreator creator) {
+        if (creator instanceof SQLiteRelationalTableCreator) {
+            return ((SQLiteRelationalTableCreator) creator).getRelationship();
+        }
+        return SQLiteRelationship.TRIGGERS;
+    }
+
+    private static String getParentColumn(SQLiteTableCreator creator) {
+        return creator.isOneToMany() ? creator.getParentColumnName() : null;
+    }
+
     public static String getSQLiteVersion() {
         final Cursor cursor = SQLiteDatabase.openOrCreateDatabase(":memory:", null).rawQuery(
                 "select sqlite_version() AS sqlite_version", null);
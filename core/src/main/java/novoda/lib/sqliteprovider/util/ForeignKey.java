@@ -0,0 +1,102 @@
+package novoda.lib.sqliteprovider.util;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A reference from columns of one table to columns of another, either declared in the schema with
+ * {@code FOREIGN KEY ... REFERENCES} or guessed from the naming convention {@code <singular>_id -> <table>._id}.
+ */
+public class ForeignKey {
+
+    private static final String ID = "_id";
+
+    private final String table;
+    private final List<String> columns;
+    private final String referencedTable;
+    private final List<String> referencedColumns;
+    private final boolean declared;
+
+    public ForeignKey(String table, List<String> columns, String referencedTable, List<String> referencedColumns, boolean declared) {
+        this.table = table;
+        this.columns = columns;
+        this.referencedTable = referencedTable;
+        this.referencedColumns = referencedColumns;
+        this.declared = declared;
+    }
+
+    /**
+     * @return the key following the naming convention of the provider, e.g. {@code fireworks.shop_id -> shops._id}
+     */
+    public static ForeignKey byConvention(String table, String column, String referencedTable) {
+        return new ForeignKey(table, Collections.singletonList(column), referencedTable, Collections.singletonList(ID), false);
+    }
+
+    /**
+     * @return the key from the table to the referenced one guessed from the referenced table name alone, e.g.
+     * {@code fireworks.shop_id -> shops._id} for {@code shops}
+     */
+    public static ForeignKey byConvention(String table, String referencedTable) {
+        return byConvention(table, singularize(referencedTable) + ID, referencedTable);
+    }
+
+    private static String singularize(String table) {
+        return (table.endsWith("s")) ? table.substring(0, table.length() - 1) : table;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public String getReferencedTable() {
+        return referencedTable;
+    }
+
+    public List<String> getReferencedColumns() {
+        return referencedColumns;
+    }
+
+    /**
+     * @return true if the key is declared in the schema, false if it was guessed from the column names
+     */
+    public boolean isDeclared() {
+        return declared;
+    }
+
+    /**
+     * @return true if the key is a single column referencing the {@code _id} of the referenced table, which is how
+     * a parent is addressed in a Uri
+     */
+    public boolean referencesId() {
+        return columns.size() == 1 && ID.equals(referencedColumns.get(0));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ForeignKey that = (ForeignKey) o;
+
+        return table.equals(that.table) && columns.equals(that.columns) && referencedTable.equals(that.referencedTable)
+                && referencedColumns.equals(that.referencedColumns);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = table.hashCode();
+        result = 31 * result + columns.hashCode();
+        result = 31 * result + referencedTable.hashCode();
+        result = 31 * result + referencedColumns.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return table + columns + " -> " + referencedTable + referencedColumns;
+    }
+}
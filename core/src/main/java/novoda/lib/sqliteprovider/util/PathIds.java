@@ -0,0 +1,89 @@
+package novoda.lib.sqliteprovider.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every (table, id) pair along the path of a Uri, from the outermost table inwards. For
+ * {@code content://authority/shop/1/firework/6/review} the pairs are {@code (shop, 1)} and {@code (firework, 6)}.
+ * <p/>
+ * Instances are immutable and built once per Uri, so they can be handed between threads freely.
+ */
+public final class PathIds {
+
+    private static final String[] NONE = new String[0];
+
+    private final String[] tables;
+    private final String[] ids;
+
+    private PathIds(String[] tables, String[] ids) {
+        this.tables = tables;
+        this.ids = ids;
+    }
+
+    static PathIds from(List<String> segments) {
+        int pairs = segments.size() / 2;
+        if (pairs == 0) {
+            return new PathIds(NONE, NONE);
+        }
+        String[] tables = new String[pairs];
+        String[] ids = new String[pairs];
+        for (int pair = 0; pair < pairs; pair++) {
+            tables[pair] = segments.get(pair * 2);
+            ids[pair] = segments.get(pair * 2 + 1);
+        }
+        return new PathIds(tables, ids);
+    }
+
+    public int size() {
+        return tables.length;
+    }
+
+    public String tableAt(int position) {
+        return tables[position];
+    }
+
+    /**
+     * @return the raw id segment of the pair at the given position
+     */
+    public String idAt(int position) {
+        return ids[position];
+    }
+
+    /**
+     * @return the id of the pair at the given position, or {@link UriRoute#NO_ID} when it is not numeric
+     */
+    public long itemIdAt(int position) {
+        return UriRoute.isNumeric(ids[position]) ? UriRoute.parseId(ids[position]) : UriRoute.NO_ID;
+    }
+
+    /**
+     * @return the raw id of the innermost pair for the given table, or null if the table is not on the path
+     */
+    public String idFor(String table) {
+        for (int position = tables.length - 1; position >= 0; position--) {
+            if (tables[position].equals(table)) {
+                return ids[position];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the pairs as a table to id map, keeping the innermost id of a table appearing more than once
+     */
+    public Map<String, String> asMap() {
+        Map<String, String> map = new LinkedHashMap<String, String>(tables.length * 2);
+        for (int position = 0; position < tables.length; position++) {
+            map.put(tables[position], ids[position]);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+}
@@ -6,67 +6,26 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Parsing .sql files and get single statements suitable for insertion.
+ * Parsing .sql files and get single statements suitable for insertion, split by {@link SQLStatementReader}.
+ * <p/>
+ * Every statement of the file is kept in memory; use {@link SQLStatementReader} to execute large files
+ * statement by statement instead.
  */
 public class SQLFile {
 
-    private static final String STATEMENT_END_CHARACTER = ";";
-    private static final String LINE_COMMENT_START_CHARACTERS = "--";
-    private static final String BLOCK_COMMENT_START_CHARACTERS = "/*";
-    private static final String BLOCK_COMMENT_END_CHARACTERS = "*/";
-    private static final String LINE_CONCATENATION_CHARACTER = " ";
-
     private List<String> statements;
 
-    private boolean inComment = false;
-
     public void parse(Reader in) throws IOException {
-        BufferedReader reader = new BufferedReader(in);
+        SQLStatementReader reader = new SQLStatementReader(in);
         statements = new ArrayList<String>();
-        String line;
-        StringBuilder statement = new StringBuilder();
-        while ((line = reader.readLine()) != null) {
-            line = stripOffTrailingComment(line).trim();
-
-            if (line.length() == 0) {
-                continue;
-            }
-
-            if (line.startsWith(BLOCK_COMMENT_START_CHARACTERS)) {
-                inComment = true;
-                continue;
-            }
-
-            if (inComment && line.endsWith(BLOCK_COMMENT_END_CHARACTERS)) {
-                inComment = false;
-                continue;
-            }
-
-            if (inComment) {
-                continue;
-            }
-
-            statement.append(line);
-            if (!line.endsWith(STATEMENT_END_CHARACTER)) {
-                statement.append(LINE_CONCATENATION_CHARACTER);
-                continue;
+        try {
+            String statement;
+            while ((statement = reader.nextStatement()) != null) {
+                statements.add(statement);
             }
-
-            statements.add(statement.toString());
-            statement.setLength(0);
-        }
-        reader.close();
-        if (statement.length() > 0) {
-            throw new IOException("incomplete sql statement (missing semicolon?): "+statement.toString());
-        }
-    }
-
-    private String stripOffTrailingComment(String line) {
-        int commentStartIndex = line.indexOf(LINE_COMMENT_START_CHARACTERS);
-        if (commentStartIndex != -1) {
-            return line.substring(0, commentStartIndex);
+        } finally {
+            reader.close();
         }
-        return line;
     }
 
     public List<String> getStatements() {
@@ -0,0 +1,17 @@
+package novoda.lib.sqliteprovider.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Hands out the statements of a SQL script one at a time, as soon as each one has been read, so that a script
+ * can be executed without holding all of its statements in memory.
+ */
+public interface SQLStatementIterator extends Closeable {
+
+    /**
+     * @return the next complete statement, or null once the script is exhausted
+     * @throws IOException if the script can not be read or ends in the middle of a statement
+     */
+    String nextStatement() throws IOException;
+}
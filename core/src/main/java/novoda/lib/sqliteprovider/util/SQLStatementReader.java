@@ -0,0 +1,299 @@
+package novoda.lib.sqliteprovider.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * Splits a SQL script into statements in a single pass over its characters, read in chunks, so that only the
+ * statement being read is held in memory.
+ * <p/>
+ * A statement ends with a semicolon outside of string literals, quoted identifiers, comments and the
+ * {@code BEGIN ... END} body of a {@code CREATE TRIGGER}. {@code --} and {@code /* *}{@code /} comments are
+ * dropped, and a run of whitespace spanning a line break or a comment becomes a single space, so a statement
+ * written over several lines reads the same as on one line. Literals are kept exactly as written.
+ */
+public class SQLStatementReader implements SQLStatementIterator {
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final int NO_WHITESPACE = -1;
+
+    private enum State {
+        NORMAL, DASH, SLASH, LINE_COMMENT, BLOCK_COMMENT, BLOCK_COMMENT_STAR, QUOTED, QUOTE_END
+    }
+
+    private final Reader reader;
+    private final CharBuffer chunk = CharBuffer.allocate(CHUNK_SIZE);
+    private final StringBuilder statement = new StringBuilder();
+
+    private State state = State.NORMAL;
+    private char closingQuote;
+    private int whitespaceStart = NO_WHITESPACE;
+    private boolean whitespaceBreaksLine;
+    private int wordStart = NO_WHITESPACE;
+    private int wordCount;
+    private boolean temporary;
+    private boolean trigger;
+    private boolean inTriggerBody;
+    private int caseDepth;
+    private boolean exhausted;
+
+    public SQLStatementReader(Reader in) {
+        this.reader = in;
+        chunk.flip();
+    }
+
+    @Override
+    public String nextStatement() throws IOException {
+        while (true) {
+            while (chunk.hasRemaining()) {
+                if (accept(chunk.get())) {
+                    String complete = statement.toString();
+                    reset();
+                    return complete;
+                }
+            }
+            if (exhausted || !fill()) {
+                exhausted = true;
+                return endOfInput();
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        chunk.clear();
+        int read = reader.read(chunk);
+        chunk.flip();
+        return read != -1;
+    }
+
+    /**
+     * @return true if the character completes a statement
+     */
+    private boolean accept(char c) {
+        while (true) {
+            switch (state) {
+                case DASH:
+                    if (c == '-') {
+                        state = State.LINE_COMMENT;
+                        startComment();
+                        return false;
+                    }
+                    state = State.NORMAL;
+                    appendSignificant('-');
+                    continue;
+                case SLASH:
+                    if (c == '*') {
+                        state = State.BLOCK_COMMENT;
+                        startComment();
+                        return false;
+                    }
+                    state = State.NORMAL;
+                    appendSignificant('/');
+                    continue;
+                case LINE_COMMENT:
+                    if (c == '\n' || c == '\r') {
+                        state = State.NORMAL;
+                    }
+                    return false;
+                case BLOCK_COMMENT:
+                    if (c == '*') {
+                        state = State.BLOCK_COMMENT_STAR;
+                    }
+                    return false;
+                case BLOCK_COMMENT_STAR:
+                    state = c == '/' ? State.NORMAL : c == '*' ? State.BLOCK_COMMENT_STAR : State.BLOCK_COMMENT;
+                    return false;
+                case QUOTED:
+                    statement.append(c);
+                    if (c == closingQuote) {
+                        state = State.QUOTE_END;
+                    }
+                    return false;
+                case QUOTE_END:
+                    if (c == closingQuote && closingQuote != ']') {
+                        // doubled quote, escaped inside the literal
+                        statement.append(c);
+                        state = State.QUOTED;
+                        return false;
+                    }
+                    state = State.NORMAL;
+                    continue;
+                default:
+                    return acceptNormal(c);
+            }
+        }
+    }
+
+    private boolean acceptNormal(char c) {
+        if (Character.isWhitespace(c)) {
+            endWord();
+            if (statement.length() > 0) {
+                if (whitespaceStart == NO_WHITESPACE) {
+                    whitespaceStart = statement.length();
+                }
+                whitespaceBreaksLine |= c == '\n' || c == '\r';
+                statement.append(c);
+            }
+            return false;
+        }
+        switch (c) {
+            case '-':
+                endWord();
+                state = State.DASH;
+                return false;
+            case '/':
+                endWord();
+                state = State.SLASH;
+                return false;
+            case '\'':
+            case '"':
+            case '`':
+            case '[':
+                endWord();
+                appendSignificant(c);
+                closingQuote = c == '[' ? ']' : c;
+                state = State.QUOTED;
+                return false;
+            case ';':
+                endWord();
+                appendSignificant(c);
+                return !inTriggerBody;
+            default:
+                if (isWordCharacter(c)) {
+                    appendSignificant(c);
+                    if (wordStart == NO_WHITESPACE) {
+                        wordStart = statement.length() - 1;
+                    }
+                } else {
+                    endWord();
+                    appendSignificant(c);
+                }
+                return false;
+        }
+    }
+
+    private void startComment() {
+        if (statement.length() > 0) {
+            if (whitespaceStart == NO_WHITESPACE) {
+                whitespaceStart = statement.length();
+            }
+            whitespaceBreaksLine = true;
+        }
+    }
+
+    /**
+     * Appends a character that is not whitespace, first collapsing the whitespace before it into a single space
+     * if it spanned a line break or a comment.
+     */
+    private void appendSignificant(char c) {
+        if (whitespaceStart != NO_WHITESPACE) {
+            if (whitespaceBreaksLine) {
+                statement.setLength(whitespaceStart);
+                statement.append(' ');
+            }
+            whitespaceStart = NO_WHITESPACE;
+            whitespaceBreaksLine = false;
+        }
+        statement.append(c);
+    }
+
+    private static boolean isWordCharacter(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    /**
+     * Follows the keywords that decide whether a semicolon ends the statement: {@code CREATE [TEMP] TRIGGER}
+     * opens a trigger, whose body runs from {@code BEGIN} to the {@code END} not closing a {@code CASE}.
+     */
+    private void endWord() {
+        if (wordStart == NO_WHITESPACE) {
+            return;
+        }
+        int start = wordStart;
+        int end = statement.length();
+        wordStart = NO_WHITESPACE;
+        wordCount++;
+        if (wordCount == 1) {
+            return;
+        }
+        if (wordCount == 2 && isWord(0, "CREATE")) {
+            trigger = isWord(start, end, "TRIGGER");
+            temporary = isWord(start, end, "TEMP") || isWord(start, end, "TEMPORARY");
+            return;
+        }
+        if (wordCount == 3 && temporary) {
+            trigger = isWord(start, end, "TRIGGER");
+            return;
+        }
+        if (!trigger) {
+            return;
+        }
+        if (isWord(start, end, "BEGIN")) {
+            inTriggerBody = true;
+        } else if (inTriggerBody && isWord(start, end, "CASE")) {
+            caseDepth++;
+        } else if (inTriggerBody && isWord(start, end, "END")) {
+            if (caseDepth > 0) {
+                caseDepth--;
+            } else {
+                inTriggerBody = false;
+            }
+        }
+    }
+
+    private boolean isWord(int start, String word) {
+        int end = start;
+        while (end < statement.length() && isWordCharacter(statement.charAt(end))) {
+            end++;
+        }
+        return isWord(start, end, word);
+    }
+
+    private boolean isWord(int start, int end, String word) {
+        if (end - start != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.toUpperCase(statement.charAt(start + i)) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String endOfInput() throws IOException {
+        if (state == State.DASH) {
+            appendSignificant('-');
+        } else if (state == State.SLASH) {
+            appendSignificant('/');
+        }
+        if (whitespaceStart != NO_WHITESPACE) {
+            statement.setLength(whitespaceStart);
+        }
+        if (statement.length() > 0) {
+            String incomplete = statement.toString();
+            reset();
+            throw new IOException("incomplete sql statement (missing semicolon?): " + incomplete);
+        }
+        return null;
+    }
+
+    private void reset() {
+        statement.setLength(0);
+        state = State.NORMAL;
+        whitespaceStart = NO_WHITESPACE;
+        whitespaceBreaksLine = false;
+        wordStart = NO_WHITESPACE;
+        wordCount = 0;
+        temporary = false;
+        trigger = false;
+        inTriggerBody = false;
+        caseDepth = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,173 @@
+package novoda.lib.sqliteprovider.util;
+
+import java.util.List;
+
+/**
+ * The result of resolving a Uri against a {@link UriRouteTable}: the table a Uri points at, the id of the row
+ * when it points at a single item, and the parent table and id when it points at children of another row.
+ * <p/>
+ * Following the Uri convention of the provider, {@code content://authority/parent/1/child/6} resolves to table
+ * {@code child}, id {@code 6}, parent table {@code parent} and parent id {@code 1}.
+ */
+public final class UriRoute {
+
+    public static final long NO_ID = -1;
+
+    private static final String ID_SUFFIX = "_id";
+
+    private final UriRouteTable.Node node;
+    private final List<String> segments;
+    private final String id;
+    private final long itemId;
+    private final String parentId;
+    private final long parentItemId;
+
+    private PathIds pathIds;
+
+    UriRoute(UriRouteTable.Node node, List<String> segments, String id, String parentId) {
+        this.node = node;
+        this.segments = segments;
+        this.id = id;
+        this.itemId = isNumeric(id) ? parseId(id) : NO_ID;
+        this.parentId = parentId;
+        this.parentItemId = isNumeric(parentId) ? parseId(parentId) : NO_ID;
+    }
+
+    public String getTable() {
+        return node.table;
+    }
+
+    public boolean isItem() {
+        return id != null;
+    }
+
+    /**
+     * @return the raw id segment when the Uri points at a single item, null otherwise
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the id of the item, or {@link #NO_ID} when the Uri is not an item or its id is not numeric
+     */
+    public long getItemId() {
+        return itemId;
+    }
+
+    public boolean hasParent() {
+        return node.parentTable != null;
+    }
+
+    /**
+     * @return the parent table, or null when the Uri has no parent
+     */
+    public String getParentTable() {
+        return node.parentTable;
+    }
+
+    /**
+     * @return the column of this table referencing its parent, e.g. {@code parent_id}, or null when the Uri has
+     * no parent
+     */
+    public String getParentColumn() {
+        return node.parentColumn;
+    }
+
+    /**
+     * @return the raw parent id segment, or null when the Uri has no parent
+     */
+    public String getParentId() {
+        return parentId;
+    }
+
+    /**
+     * @return the id of the parent, or {@link #NO_ID} when the Uri has no parent or its id is not numeric
+     */
+    public long getParentItemId() {
+        return parentItemId;
+    }
+
+    /**
+     * @return every (table, id) pair along the path, built on first access
+     */
+    public PathIds getPathIds() {
+        if (pathIds == null) {
+            pathIds = PathIds.from(segments);
+        }
+        return pathIds;
+    }
+
+    /**
+     * Checks whether the segment is a base 10 number fitting in a {@code long}, without allocating and without
+     * relying on a {@link NumberFormatException}.
+     */
+    public static boolean isNumeric(CharSequence segment) {
+        if (segment == null) {
+            return false;
+        }
+        int length = segment.length();
+        if (length == 0) {
+            return false;
+        }
+        int i = 0;
+        char first = segment.charAt(0);
+        boolean negative = first == '-';
+        if (negative || first == '+') {
+            if (length == 1) {
+                return false;
+            }
+            i++;
+        }
+        // accumulates negatively, as Long.parseLong does, so that Long.MIN_VALUE fits
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / 10;
+        long result = 0;
+        for (; i < length; i++) {
+            int digit = segment.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < multiplyLimit) {
+                return false;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return false;
+            }
+            result -= digit;
+        }
+        return true;
+    }
+
+    /**
+     * Parses a segment accepted by {@link #isNumeric(CharSequence)}.
+     *
+     * @throws NumberFormatException if the segment is not numeric
+     */
+    public static long parseId(CharSequence segment) {
+        if (!isNumeric(segment)) {
+            throw new NumberFormatException("Not a numeric id: " + segment);
+        }
+        int i = 0;
+        char first = segment.charAt(0);
+        boolean negative = first == '-';
+        if (negative || first == '+') {
+            i++;
+        }
+        long result = 0;
+        for (; i < segment.length(); i++) {
+            result = result * 10 - (segment.charAt(i) - '0');
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * @return the name of the column referencing the given parent table, e.g. {@code parent_id}
+     */
+    public static String parentColumnFor(String parentTable) {
+        return parentTable + ID_SUFFIX;
+    }
+
+    @Override
+    public String toString() {
+        return "UriRoute{table=" + getTable() + ", id=" + id + ", parentTable=" + getParentTable() + ", parentId=" + parentId + "}";
+    }
+}
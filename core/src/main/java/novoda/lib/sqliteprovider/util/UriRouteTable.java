@@ -0,0 +1,112 @@
+package novoda.lib.sqliteprovider.util;
+
+import android.net.Uri;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves Uris into {@link UriRoute}s with a single pass over their path segments.
+ * <p/>
+ * Table segments alternate with id segments, so the table is a trie keyed on the table segments only: every
+ * node stands for one chain of tables, e.g. {@code parent/#/child}, and holds what can be derived from that
+ * chain once, like the parent table and the name of the column referencing it. Later Uris with the same shape
+ * only walk the trie and parse their ids. Nodes are added lazily and the table is safe to share between threads.
+ * <p/>
+ * Only segments naming a known table are kept, so Uris with made up paths are resolved without growing the trie.
+ */
+public class UriRouteTable {
+
+    /**
+     * Decides which table segments are worth keeping in the trie. It is asked on every segment missing from the
+     * trie, so it should answer from memory rather than from the database.
+     */
+    public interface KnownTables {
+
+        boolean isKnownTable(String table);
+    }
+
+    private static final KnownTables NO_TABLES = new KnownTables() {
+        @Override
+        public boolean isKnownTable(String table) {
+            return false;
+        }
+    };
+
+    private final Node root = new Node(null, null);
+    private final KnownTables knownTables;
+
+    /**
+     * Creates a table that keeps no nodes, every Uri is resolved from scratch.
+     */
+    public UriRouteTable() {
+        this(NO_TABLES);
+    }
+
+    public UriRouteTable(KnownTables knownTables) {
+        this.knownTables = knownTables;
+    }
+
+    public UriRoute resolve(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        int size = segments.size();
+        boolean isItem = size % 2 == 0;
+        int tableIndex = isItem ? size - 2 : size - 1;
+        Node node = root;
+        for (int i = 0; i <= tableIndex; i += 2) {
+            node = node.childFor(segments.get(i), knownTables);
+        }
+        String id = isItem && size > 0 ? segments.get(size - 1) : null;
+        String parentId = tableIndex >= 2 ? segments.get(tableIndex - 1) : null;
+        return new UriRoute(node, segments, id, parentId);
+    }
+
+    /**
+     * @return the number of nodes kept in the trie
+     */
+    int size() {
+        return root.size();
+    }
+
+    static final class Node {
+
+        final String table;
+        final String parentTable;
+        final String parentColumn;
+
+        private final ConcurrentMap<String, Node> children = new ConcurrentHashMap<String, Node>();
+
+        Node(String table, String parentTable) {
+            this.table = table;
+            this.parentTable = parentTable;
+            this.parentColumn = parentTable == null ? null : UriRoute.parentColumnFor(parentTable);
+        }
+
+        /**
+         * @return the node of the child table, only stored below this one if the table is known
+         */
+        Node childFor(String childTable, KnownTables knownTables) {
+            Node child = children.get(childTable);
+            if (child == null) {
+                Node created = new Node(childTable, table);
+                if (!knownTables.isKnownTable(childTable)) {
+                    return created;
+                }
+                child = children.putIfAbsent(childTable, created);
+                if (child == null) {
+                    child = created;
+                }
+            }
+            return child;
+        }
+
+        int size() {
+            int size = children.size();
+            for (Node child : children.values()) {
+                size += child.size();
+            }
+            return size;
+        }
+    }
+}
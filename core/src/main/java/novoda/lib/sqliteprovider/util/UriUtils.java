@@ -6,35 +6,22 @@ import java.util.*;
 
 public class UriUtils {
 
-    private static Map<String, String> mappedIds = new HashMap<String, String>();
+    private final PathIds pathIds;
 
+    private UriUtils(PathIds pathIds) {
+        this.pathIds = pathIds;
+    }
+
+    /**
+     * @deprecated Use {@link UriRoute#getPathIds()} instead, which gives every (table, id) pair without building a map
+     */
+    @Deprecated
     public static UriUtils from(Uri uri) {
-        UriUtils utils = new UriUtils();
-
-        final List<String> segs = uri.getPathSegments();
-        String parent = "";
-
-        for (int i = 0; i < segs.size(); i++) {
-            String currentSeg = segs.get(i);
-            if (isNumeric(currentSeg)) {
-                final int children = Integer.parseInt(currentSeg);
-                for (int l = 0; l < children; l++) {
-                    mappedIds.put(parent, currentSeg);
-                }
-            } else {
-                parent = currentSeg;
-            }
-        }
-        return utils;
+        return new UriUtils(PathIds.from(uri.getPathSegments()));
     }
 
     public static boolean isNumeric(String numericChar) {
-        try {
-            Integer.parseInt(numericChar);
-        } catch (NumberFormatException nfe) {
-            return false;
-        }
-        return true;
+        return UriRoute.isNumeric(numericChar);
     }
 
     public static boolean isNumberedEntryWithinCollection(final Uri uri) {
@@ -101,6 +88,6 @@ public class UriUtils {
     }
 
     public Map<String, String> getMappedIds() {
-        return mappedIds;
+        return pathIds.asMap();
     }
 }
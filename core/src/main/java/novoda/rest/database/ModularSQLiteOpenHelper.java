@@ -1,13 +1,17 @@
 
 package novoda.rest.database;
 
+import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,7 +27,7 @@ public class ModularSQLiteOpenHelper extends SQLiteOpenHelper {
 
     private static int dbVersion = 0;
 
-    private final List<String> createdTable;
+    private final SQLiteTableRegistry registry;
     private final Map<String, SQLiteTableCreator> createStatements;
 
     public ModularSQLiteOpenHelper(Context context) {
@@ -32,7 +36,7 @@ public class ModularSQLiteOpenHelper extends SQLiteOpenHelper {
 
     public ModularSQLiteOpenHelper(Context context, SQLiteDatabase.CursorFactory factory) {
         super(context, new StringBuilder(context.getApplicationInfo().packageName).append(".db").toString(), factory, dbVersion);
-        createdTable = new ArrayList<String>();
+        registry = new SQLiteTableRegistry();
         createStatements = new HashMap<String, SQLiteTableCreator>();
         init();
     }
@@ -40,7 +44,7 @@ public class ModularSQLiteOpenHelper extends SQLiteOpenHelper {
     private void init() {
         final Cursor cur = getReadableDatabase().rawQuery(SELECT_TABLES_NAME, null);
         while (cur.moveToNext()) {
-            createdTable.add(cur.getString(0));
+            registry.onTableCreated(cur.getString(0));
         }
         cur.close();
     }
@@ -49,54 +53,194 @@ public class ModularSQLiteOpenHelper extends SQLiteOpenHelper {
     public void onCreate(SQLiteDatabase db) {
     }
 
+    /**
+     * Enables foreign keys, so that tables using
+     * {@link SQLiteRelationship#FOREIGN_KEY} cascade deletes to their children.
+     * <p/>
+     * This applies to the whole writable connection, not only to the tables
+     * of this helper: any other table of the database declaring a foreign key
+     * is enforced from then on too, so a row referencing a missing parent is
+     * rejected and its ON DELETE / ON UPDATE actions run. Override without
+     * calling through to keep SQLite's default of foreign keys off, at the
+     * cost of {@link SQLiteRelationship#FOREIGN_KEY} no longer cascading.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly()) {
+            db.execSQL("PRAGMA foreign_keys = ON;");
+        }
+    }
+
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         Log.v(TAG, "upgrading database from version " + oldVersion + " to " + newVersion);
+        List<String> statements = new ArrayList<String>();
+        List<String> created = new ArrayList<String>();
         for (Entry<String, SQLiteTableCreator> entry : createStatements.entrySet()) {
-            if (createdTable.contains(entry.getKey())) {
+            if (registry.isTableCreated(entry.getKey())) {
                 Log.v(TAG, "Table " + entry.getKey() + " already in DB.");
             } else {
                 Log.v(TAG, "Creating table: " + entry.getKey());
-                SQLiteTableCreator creator = entry.getValue();
-                db.execSQL(DatabaseUtils.getCreateStatement(creator));
-                if (creator.isOneToMany()) {
-                    for (String trigger : creator.getTriggers()) {
-                        db.execSQL(trigger);
-                    }
-                }
-                createdTable.add(entry.getKey());
+                addCreateStatements(entry.getValue(), statements);
+                created.add(entry.getKey());
             }
         }
+        if (created.isEmpty()) {
+            return;
+        }
+        db.beginTransaction();
+        try {
+            for (String statement : statements) {
+                db.execSQL(statement);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        for (String table : created) {
+            registry.onTableCreated(table);
+        }
+    }
+
+    private static void addCreateStatements(SQLiteTableCreator creator, List<String> statements) {
+        statements.add(DatabaseUtils.getCreateStatement(creator));
+        statements.addAll(DatabaseUtils.getIndexStatements(creator));
+        if (creator.isOneToMany() && DatabaseUtils.getRelationship(creator) == SQLiteRelationship.TRIGGERS
+                && creator.getTriggers() != null) {
+            Collections.addAll(statements, creator.getTriggers());
+        }
     }
 
     public synchronized void createTable(SQLiteTableCreator creator) {
-        if (createdTable.contains(creator.getTableName())) {
-            Log.v(TAG, "Table " + creator.getTableName() + " already in DB.");
-        } else {
-            Log.v(TAG, "Will create table " + creator.getTableName());
-            createStatements.put(creator.getTableName(), creator);
-            getWritableDatabase().needUpgrade(++dbVersion);
-            onUpgrade(getWritableDatabase(), 0, ALWAYS_UPGRADE);
+        createTables(Collections.singletonList(creator));
+    }
+
+    /**
+     * Creates every table not yet in the database, with its indexes and triggers, in a
+     * single transaction and a single version bump.
+     * @param creators , the tables to create
+     */
+    public synchronized void createTables(Collection<? extends SQLiteTableCreator> creators) {
+        boolean pending = false;
+        for (SQLiteTableCreator creator : creators) {
+            if (registry.isTableCreated(creator.getTableName())) {
+                Log.v(TAG, "Table " + creator.getTableName() + " already in DB.");
+            } else {
+                Log.v(TAG, "Will create table " + creator.getTableName());
+                createStatements.put(creator.getTableName(), creator);
+                pending = true;
+            }
+        }
+        if (pending) {
+            SQLiteDatabase db = getWritableDatabase();
+            db.needUpgrade(++dbVersion);
+            onUpgrade(db, 0, ALWAYS_UPGRADE);
         }
     }
 
     /**
-     * Method to return the columns and type for a specific table. This only
-     * supports value defined in SQLType
+     * Inserts a row, first adding to the table any column of the values it
+     * does not have yet. The columns of each table are cached, so a row with
+     * only known columns goes straight to the insert.
+     * @param table , the table to insert into
+     * @param values , the row to insert
+     * @return the row ID of the inserted row
+     */
+    public synchronized long insert(final String table, final ContentValues values) {
+        addMissingColumns(table, values);
+        try {
+            return getWritableDatabase().insertOrThrow(table, null, values);
+        } catch (SQLiteException e) {
+            if (!isMissingColumn(e)) {
+                throw e;
+            }
+            // the table changed behind the cache
+            registry.invalidate(table);
+            if (!addMissingColumns(table, values)) {
+                throw e;
+            }
+            return getWritableDatabase().insertOrThrow(table, null, values);
+        }
+    }
+
+    private static boolean isMissingColumn(final SQLiteException e) {
+        String message = e.getMessage();
+        return message != null && (message.contains("has no column named") || message.contains("no such column"));
+    }
+
+    /**
+     * @return true if columns were added
+     */
+    private boolean addMissingColumns(final String table, final ContentValues values) {
+        SQLiteTableRegistry.Columns columns = columnsOf(table);
+        List<String> alterations = null;
+        for (Entry<String, Object> value : values.valueSet()) {
+            if (!columns.contains(value.getKey())) {
+                if (alterations == null) {
+                    alterations = new ArrayList<String>();
+                }
+                alterations.add(addColumnStatement(table, value.getKey(), typeOf(value.getValue())));
+            }
+        }
+        if (alterations == null) {
+            return false;
+        }
+        Log.v(TAG, "Adding " + alterations.size() + " column(s) to table " + table);
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String alteration : alterations) {
+                db.execSQL(alteration);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        registry.invalidate(table);
+        return true;
+    }
+
+    /**
+     * @return the statement adding the column, with the names quoted so that
+     *         any key of the values is taken as a name
+     */
+    static String addColumnStatement(final String table, final String column, final SQLiteType type) {
+        return new StringBuilder("ALTER TABLE ").append(SQLiteUtil.quote(table)).append(" ADD COLUMN ").append(SQLiteUtil.quote(column))
+                .append(' ').append(type.name()).toString();
+    }
+
+    private static SQLiteType typeOf(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof Boolean) {
+            return SQLiteType.INTEGER;
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return SQLiteType.REAL;
+        }
+        if (value instanceof byte[]) {
+            return SQLiteType.BLOB;
+        }
+        return SQLiteType.TEXT;
+    }
+
+    /**
+     * Method to return the columns and type for a specific table. Declared
+     * types are mapped to SQLType after their SQLite affinity. The columns are
+     * cached until the table is altered, and the lookup does not lock.
      * @param table , the table name against which we want the columns
-     * @return a map containing all columns and their type
+     * @return an unmodifiable map containing all columns and their type
      */
-    public synchronized Map<String, SQLiteType> getColumnsForTable(final String table) {
-        final Cursor cur = getReadableDatabase().rawQuery(
-                new StringBuilder("PRAGMA table_info('").append(table).append("')").toString(),
-                null);
-        final Map<String, SQLiteType> ret = new HashMap<String, SQLiteType>(cur.getCount());
-        while (cur.moveToNext()) {
-            ret.put(cur.getString(cur.getColumnIndexOrThrow("name")),
-                    SQLiteType.valueOf(cur.getString(cur.getColumnIndexOrThrow("type"))));
+    public Map<String, SQLiteType> getColumnsForTable(final String table) {
+        return columnsOf(table).getTypes();
+    }
+
+    private SQLiteTableRegistry.Columns columnsOf(final String table) {
+        SQLiteTableRegistry.Columns columns = registry.getColumns(table);
+        if (columns == null) {
+            columns = registry.loadColumns(getReadableDatabase(), table);
         }
-        cur.close();
-        return ret;
+        return columns;
     }
 
     /**
@@ -105,8 +249,8 @@ public class ModularSQLiteOpenHelper extends SQLiteOpenHelper {
      * @param tableName , the table to check if created or not
      * @return true if the table has been created. false otherwise
      */
-    public synchronized boolean isTableCreated(final String tableName) {
-        return createdTable.contains(tableName);
+    public boolean isTableCreated(final String tableName) {
+        return registry.isTableCreated(tableName);
     }
 
 }
@@ -0,0 +1,162 @@
+package novoda.rest.database;
+
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Inserts the rows of a {@link SQLiteInserter} through one compiled statement per distinct insert, binding each
+ * value at its insert index according to its declared {@link SQLiteType}, without going through ContentValues.
+ * <p/>
+ * All the rows of a call are inserted in one transaction. When a row fails, {@link SQLiteInserter#onFailure(int)}
+ * decides whether to skip it ({@link SQLiteInserter#CONTINUE}), keep the rows inserted so far and stop
+ * ({@link SQLiteInserter#BREAK}) or undo the whole call ({@link SQLiteInserter#ROLLBACK}).
+ */
+public class SQLiteBulkInserter {
+
+    private static final String TAG = SQLiteBulkInserter.class.getSimpleName();
+
+    private final SQLiteDatabase db;
+    private final Map<String, SQLiteStatement> statements = new HashMap<String, SQLiteStatement>();
+
+    public SQLiteBulkInserter(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    /**
+     * @param tableName , the table to insert into
+     * @param inserter  , the rows to insert
+     * @return the number of rows inserted, 0 if they were rolled back
+     */
+    public int insert(String tableName, SQLiteInserter inserter) {
+        SQLiteStatement statement = statementFor(tableName, inserter);
+        String[] columns = inserter.getColumns();
+        int count = inserter.getCount();
+        int inserted = 0;
+        db.beginTransaction();
+        try {
+            for (int row = 0; row < count; row++) {
+                short onFailure;
+                try {
+                    statement.clearBindings();
+                    for (String column : columns) {
+                        bind(statement, inserter.getInsertIndex(column), column, inserter.getType(column),
+                                inserter.get(column, row));
+                    }
+                    if (statement.executeInsert() != -1) {
+                        inserted++;
+                        continue;
+                    }
+                    onFailure = inserter.onFailure(row);
+                } catch (SQLException e) {
+                    Log.w(TAG, "Could not insert row " + row + " into " + tableName + ": " + e.getMessage());
+                    onFailure = inserter.onFailure(row);
+                }
+                if (onFailure == SQLiteInserter.ROLLBACK) {
+                    return 0;
+                }
+                if (onFailure == SQLiteInserter.BREAK) {
+                    break;
+                }
+            }
+            db.setTransactionSuccessful();
+            return inserted;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Statements are kept by their SQL, as inserters into the same table may insert different columns.
+     */
+    private SQLiteStatement statementFor(String tableName, SQLiteInserter inserter) {
+        String sql = inserter.getInsertStatement(tableName);
+        if (sql == null) {
+            sql = insertStatement(tableName, inserter);
+        }
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * @return an insert of every column of the inserter, each placed at its insert index
+     * @throws IllegalArgumentException if the insert indices are not 1 to the number of columns, each used once
+     */
+    static String insertStatement(String tableName, SQLiteInserter inserter) {
+        String[] columns = inserter.getColumns();
+        String[] ordered = new String[columns.length];
+        for (String column : columns) {
+            int index = inserter.getInsertIndex(column);
+            if (index < 1 || index > columns.length) {
+                throw new IllegalArgumentException("Insert index " + index + " of column " + column + " in "
+                        + tableName + " is not between 1 and " + columns.length);
+            }
+            if (ordered[index - 1] != null) {
+                throw new IllegalArgumentException("Columns " + ordered[index - 1] + " and " + column + " in "
+                        + tableName + " share the insert index " + index);
+            }
+            ordered[index - 1] = column;
+        }
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(SQLiteUtil.quote(tableName)).append(" (");
+        StringBuilder values = new StringBuilder(") VALUES (");
+        for (int i = 0; i < ordered.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+                values.append(", ");
+            }
+            sql.append(SQLiteUtil.quote(ordered[i]));
+            values.append('?');
+        }
+        return sql.append(values).append(");").toString();
+    }
+
+    /**
+     * Binds the value as its declared type when it is a number of that type, leaving it to the column affinity
+     * otherwise. Byte arrays are always bound as blobs and booleans as 0 or 1, and only text is bound as a string.
+     * @throws IllegalArgumentException if the value is of none of those kinds
+     */
+    private static void bind(SQLiteStatement statement, int index, String column, SQLiteType type, Object value) {
+        if (value == null || type == SQLiteType.NULL) {
+            statement.bindNull(index);
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, ((Boolean) value) ? 1 : 0);
+        } else if (value instanceof CharSequence) {
+            statement.bindString(index, value.toString());
+        } else if (value instanceof Number) {
+            bind(statement, index, type, (Number) value);
+        } else {
+            throw new IllegalArgumentException("Can not bind the " + value.getClass().getName() + " of column "
+                    + column);
+        }
+    }
+
+    private static void bind(SQLiteStatement statement, int index, SQLiteType type, Number value) {
+        boolean integral = value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte;
+        if (type == SQLiteType.INTEGER || (type != SQLiteType.REAL && integral)) {
+            statement.bindLong(index, value.longValue());
+        } else {
+            statement.bindDouble(index, value.doubleValue());
+        }
+    }
+
+    /**
+     * Releases the compiled statements.
+     */
+    public void release() {
+        for (SQLiteStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+    }
+}
@@ -3,11 +3,13 @@ package novoda.rest.database;
 import java.io.*;
 import java.util.Iterator;
 
+import novoda.lib.sqliteprovider.util.SQLStatementIterator;
+
 /*
  * Very simple parser.
  * Currently only support per line sql statements
  */
-public class SQLiteFileParser implements Iterator<String>, Iterable<String> {
+public class SQLiteFileParser implements Iterator<String>, Iterable<String>, SQLStatementIterator {
 
     private final BufferedReader br;
 
@@ -48,6 +50,15 @@ public class SQLiteFileParser implements Iterator<String>, Iterable<String> {
         }
     }
 
+    @Override
+    public String nextStatement() throws IOException {
+        if (inHasNext) {
+            inHasNext = false;
+            return currentLine;
+        }
+        return getNextSQL();
+    }
+
     private String getNextSQL() throws IOException {
         currentLine = br.readLine();
         if (currentLine != null
@@ -62,6 +73,7 @@ public class SQLiteFileParser implements Iterator<String>, Iterable<String> {
         throw new UnsupportedOperationException("not supported");
     }
 
+    @Override
     public void close() {
         try {
             br.close();
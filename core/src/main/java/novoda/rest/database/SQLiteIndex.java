@@ -0,0 +1,31 @@
+package novoda.rest.database;
+
+/**
+ * An index over one or more columns of a table, declared by a
+ * {@link SQLiteIndexedTableCreator}.
+ */
+public class SQLiteIndex {
+
+    private final String[] columns;
+    private final boolean unique;
+
+    public SQLiteIndex(final String... columns) {
+        this(false, columns);
+    }
+
+    public SQLiteIndex(final boolean unique, final String... columns) {
+        if (columns == null || columns.length == 0) {
+            throw new IllegalArgumentException("An index needs at least one column");
+        }
+        this.unique = unique;
+        this.columns = columns.clone();
+    }
+
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    public boolean isUnique() {
+        return unique;
+    }
+}
@@ -0,0 +1,10 @@
+package novoda.rest.database;
+
+/**
+ * A {@link SQLiteTableCreator} declaring indexes beyond the single columns
+ * flagged by {@link #shouldIndex(String)}, such as composite or unique ones.
+ */
+public interface SQLiteIndexedTableCreator extends SQLiteTableCreator {
+
+    SQLiteIndex[] getIndexes();
+}
@@ -13,6 +13,9 @@ public interface SQLiteInserter {
     // Do I need?
     String getInsertStatement(String tableName);
 
+    /**
+     * @return the 1-based position of the field in the insert statement
+     */
     int getInsertIndex(String field);
 
     SQLiteType getType(String field);
@@ -22,7 +25,9 @@ public interface SQLiteInserter {
     // DO I need?
     String[] getColumns();
 
-    // FIXME not fully working yet
+    /**
+     * @return one of {@link #CONTINUE}, {@link #BREAK} or {@link #ROLLBACK}
+     */
     short onFailure(int index);
 
     // TODO v2
@@ -0,0 +1,10 @@
+package novoda.rest.database;
+
+/**
+ * A {@link SQLiteTableCreator} choosing how a one to many table is tied to
+ * its parent. Tables of other creators use {@link SQLiteRelationship#TRIGGERS}.
+ */
+public interface SQLiteRelationalTableCreator extends SQLiteTableCreator {
+
+    SQLiteRelationship getRelationship();
+}
@@ -0,0 +1,25 @@
+package novoda.rest.database;
+
+/**
+ * How the children of a one to many table follow their parent row.
+ */
+public enum SQLiteRelationship {
+
+    /**
+     * Triggers on the parent table delete the children of a row when it is
+     * updated or deleted, one trigger run per parent row.
+     */
+    TRIGGERS,
+
+    /**
+     * The parent column is declared as a FOREIGN KEY ... ON DELETE CASCADE,
+     * which needs PRAGMA foreign_keys: children are deleted with their parent
+     * and left alone when it is updated.
+     * <p/>
+     * The key is enforced as well: inserting or updating a child whose parent
+     * id matches no parent row fails with a constraint violation, where the
+     * triggers would have accepted it. Insert the parent first, or leave the
+     * parent column null for a child without one.
+     */
+    FOREIGN_KEY
+}
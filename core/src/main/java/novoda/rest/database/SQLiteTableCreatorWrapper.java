@@ -1,7 +1,7 @@
 
 package novoda.rest.database;
 
-public class SQLiteTableCreatorWrapper implements SQLiteTableCreator {
+public class SQLiteTableCreatorWrapper implements SQLiteIndexedTableCreator, SQLiteRelationalTableCreator {
 
     private String[] appendColumns = new String[]{};
     private final SQLiteTableCreator wrapped;
@@ -83,6 +83,22 @@ public class SQLiteTableCreatorWrapper implements SQLiteTableCreator {
         return wrapped.shouldIndex(field);
     }
 
+    @Override
+    public SQLiteIndex[] getIndexes() {
+        if (wrapped instanceof SQLiteIndexedTableCreator) {
+            return ((SQLiteIndexedTableCreator) wrapped).getIndexes();
+        }
+        return new SQLiteIndex[]{};
+    }
+
+    @Override
+    public SQLiteRelationship getRelationship() {
+        if (wrapped instanceof SQLiteRelationalTableCreator) {
+            return ((SQLiteRelationalTableCreator) wrapped).getRelationship();
+        }
+        return SQLiteRelationship.TRIGGERS;
+    }
+
     @Override
     public boolean shouldPKAutoIncrement() {
         return wrapped.shouldPKAutoIncrement();
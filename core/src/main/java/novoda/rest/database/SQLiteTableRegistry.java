@@ -0,0 +1,119 @@
+package novoda.rest.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The tables of a {@link ModularSQLiteOpenHelper} and their columns, readable
+ * from any thread without locking. Columns are loaded once per table with
+ * PRAGMA table_info and kept until the table is created or altered again.
+ */
+class SQLiteTableRegistry {
+
+    private final ConcurrentMap<String, Boolean> tables = new ConcurrentHashMap<String, Boolean>();
+    private final ConcurrentMap<String, Columns> columns = new ConcurrentHashMap<String, Columns>();
+    private final AtomicInteger invalidations = new AtomicInteger();
+
+    boolean isTableCreated(final String table) {
+        return tables.containsKey(table);
+    }
+
+    void onTableCreated(final String table) {
+        tables.put(table, Boolean.TRUE);
+        invalidate(table);
+    }
+
+    void invalidate(final String table) {
+        invalidations.incrementAndGet();
+        columns.remove(table);
+    }
+
+    /**
+     * @return the cached columns of the table, null if they need to be loaded
+     */
+    Columns getColumns(final String table) {
+        return columns.get(table);
+    }
+
+    Columns loadColumns(final SQLiteDatabase db, final String table) {
+        int invalidation = invalidations.get();
+        Columns read = Columns.read(db, table);
+        columns.put(table, read);
+        if (invalidation != invalidations.get()) {
+            // the table changed while it was being read, the next lookup reads it again
+            columns.remove(table, read);
+        }
+        return read;
+    }
+
+    /**
+     * @return the type of the column after its declared type, following the
+     *         affinity rules of SQLite so that any declared type is accepted
+     */
+    static SQLiteType typeOf(final String declaredType) {
+        String type = declaredType == null ? "" : declaredType.toUpperCase(Locale.US);
+        if (type.contains("INT")) {
+            return SQLiteType.INTEGER;
+        }
+        if (type.contains("CHAR") || type.contains("CLOB") || type.contains("TEXT")) {
+            return SQLiteType.TEXT;
+        }
+        if (type.length() == 0 || type.contains("BLOB")) {
+            return SQLiteType.BLOB;
+        }
+        // REAL, FLOAT, DOUBLE and the numeric affinity of the remaining types
+        return SQLiteType.REAL;
+    }
+
+    static final class Columns {
+
+        private final Map<String, SQLiteType> types;
+        private final Set<String> names;
+
+        private Columns(final Map<String, SQLiteType> types) {
+            this.types = Collections.unmodifiableMap(types);
+            this.names = new HashSet<String>(types.size() * 2);
+            for (String name : types.keySet()) {
+                names.add(name.toLowerCase(Locale.US));
+            }
+        }
+
+        static Columns read(final SQLiteDatabase db, final String table) {
+            final Cursor cur = db.rawQuery(
+                    new StringBuilder("PRAGMA table_info('").append(table.replace("'", "''")).append("')").toString(),
+                    null);
+            try {
+                final Map<String, SQLiteType> types = new HashMap<String, SQLiteType>(cur.getCount() * 2);
+                final int name = cur.getColumnIndexOrThrow("name");
+                final int type = cur.getColumnIndexOrThrow("type");
+                while (cur.moveToNext()) {
+                    types.put(cur.getString(name), typeOf(cur.getString(type)));
+                }
+                return new Columns(types);
+            } finally {
+                cur.close();
+            }
+        }
+
+        Map<String, SQLiteType> getTypes() {
+            return types;
+        }
+
+        /**
+         * @return true if the table has the column, whatever its case
+         */
+        boolean contains(final String column) {
+            return types.containsKey(column) || names.contains(column.toLowerCase(Locale.US));
+        }
+    }
+}
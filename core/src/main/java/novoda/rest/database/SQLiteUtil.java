@@ -14,6 +14,15 @@ public final class SQLiteUtil {
         // Util Class
     }
 
+    /**
+     * @return the identifier between double quotes, with its own double quotes doubled, so that any name is taken
+     *         as a name
+     */
+    public static String quote(final String identifier) {
+        return new StringBuilder(identifier.length() + 2).append('"').append(identifier.replace("\"", "\"\""))
+                .append('"').toString();
+    }
+
     public static String[] getTriggers(final String parentTable, final String parentPKName,
             final String childTable, final String parentFKName) {
         return new String[] {
@@ -4,7 +4,7 @@ import android.net.Uri;
 
 import java.util.*;
 
-public class UriTableCreator implements SQLiteTableCreator {
+public class UriTableCreator implements SQLiteRelationalTableCreator {
 
     private static final String COL_PRIMARY_KEY = "_id";
 
@@ -12,6 +12,8 @@ public class UriTableCreator implements SQLiteTableCreator {
 
     private List<String> pathSegments;
 
+    private SQLiteRelationship relationship = SQLiteRelationship.TRIGGERS;
+
     protected UriTableCreator() {
     }
 
@@ -57,7 +59,7 @@ public class UriTableCreator implements SQLiteTableCreator {
      */
     @Override
     public String[] getTriggers() {
-        if (isOneToMany()) {
+        if (isOneToMany() && relationship == SQLiteRelationship.TRIGGERS) {
             return SQLiteUtil.getTriggers(getParentTableName(), getParentPrimaryKey(), getTableName(), getParentColumnName());
         }
         return null;
@@ -127,6 +129,15 @@ public class UriTableCreator implements SQLiteTableCreator {
         return uri;
     }
 
+    @Override
+    public SQLiteRelationship getRelationship() {
+        return relationship;
+    }
+
+    public final void setRelationship(SQLiteRelationship relationship) {
+        this.relationship = relationship;
+    }
+
     public static SQLiteTableCreator fromUri(final Uri uri) {
         UriTableCreator utc = new UriTableCreator(uri) {
         };
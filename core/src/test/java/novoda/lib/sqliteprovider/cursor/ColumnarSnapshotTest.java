@@ -0,0 +1,77 @@
+package novoda.lib.sqliteprovider.cursor;
+
+import android.database.Cursor;
+import android.os.Bundle;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import novoda.lib.sqliteprovider.RoboRunner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+@RunWith(RoboRunner.class)
+public class ColumnarSnapshotTest {
+
+    @Mock
+    private Cursor cursor;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        when(cursor.getColumnIndexOrThrow("rowCount")).thenReturn(0);
+        when(cursor.getColumnIndexOrThrow("price")).thenReturn(1);
+        when(cursor.getColumnIndexOrThrow("name")).thenReturn(2);
+        when(cursor.getColumnIndexOrThrow("name:codes")).thenReturn(3);
+        when(cursor.getCount()).thenReturn(3);
+        when(cursor.moveToFirst()).thenReturn(true);
+        when(cursor.moveToNext()).thenReturn(true, true, false);
+        when(cursor.getLong(0)).thenReturn(7L, 8L, 9L);
+        when(cursor.getDouble(1)).thenReturn(1.5, 2.5, 3.5);
+        when(cursor.getString(2)).thenReturn("rocket", null, "rocket");
+        when(cursor.getString(3)).thenReturn("a", "b", "a");
+    }
+
+    @Test
+    public void testProjectsLongsThenDoublesThenStrings() {
+        assertArrayEquals(new String[]{"rowCount", "price", "name", "name:codes"}, ColumnarSnapshot.projectionFor(request()));
+    }
+
+    @Test
+    public void testReadsEveryRowIntoColumns() {
+        Bundle snapshot = ColumnarSnapshot.from(cursor, request());
+
+        assertEquals(3, ColumnarSnapshot.getRowCount(snapshot));
+        assertArrayEquals(new double[]{1.5, 2.5, 3.5}, ColumnarSnapshot.getDoubles(snapshot, "price"), 0);
+    }
+
+    @Test
+    public void testDictionaryEncodesStringsWithNullsAsMinusOne() {
+        Bundle snapshot = ColumnarSnapshot.from(cursor, request());
+
+        assertArrayEquals(new String[]{"rocket"}, ColumnarSnapshot.getDictionary(snapshot, "name"));
+        assertArrayEquals(new int[]{0, -1, 0}, ColumnarSnapshot.getCodes(snapshot, "name"));
+    }
+
+    @Test
+    public void testColumnNamesDoNotOverwriteOtherEntries() {
+        Bundle snapshot = ColumnarSnapshot.from(cursor, request());
+
+        assertArrayEquals(new long[]{7, 8, 9}, ColumnarSnapshot.getLongs(snapshot, "rowCount"));
+        assertArrayEquals(new int[]{0, 1, 0}, ColumnarSnapshot.getCodes(snapshot, "name:codes"));
+        assertArrayEquals(new int[]{0, -1, 0}, ColumnarSnapshot.getCodes(snapshot, "name"));
+    }
+
+    private static Bundle request() {
+        Bundle request = new Bundle();
+        request.putStringArray(ColumnarSnapshot.EXTRA_LONG_COLUMNS, new String[]{"rowCount"});
+        request.putStringArray(ColumnarSnapshot.EXTRA_DOUBLE_COLUMNS, new String[]{"price"});
+        request.putStringArray(ColumnarSnapshot.EXTRA_STRING_COLUMNS, new String[]{"name", "name:codes"});
+        return request;
+    }
+}
@@ -0,0 +1,101 @@
+package novoda.lib.sqliteprovider.cursor;
+
+import android.database.Cursor;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RowMapperTest {
+
+    private static final String[] COLUMN_NAMES = {"_id", "name", "price"};
+
+    @Mock
+    private Cursor cursor;
+
+    private final RowMapper<String> mapper = new RowMapper<String>("price", "name") {
+        @Override
+        protected String mapRow(Row row) {
+            return row.getString(1) + ":" + row.getDouble(0);
+        }
+    };
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        when(cursor.getColumnNames()).thenReturn(COLUMN_NAMES);
+        when(cursor.getColumnIndexOrThrow("name")).thenReturn(1);
+        when(cursor.getColumnIndexOrThrow("price")).thenReturn(2);
+        when(cursor.getCount()).thenReturn(2);
+        when(cursor.moveToFirst()).thenReturn(true);
+        when(cursor.moveToNext()).thenReturn(true, false);
+        when(cursor.getString(1)).thenReturn("rocket", "fountain");
+        when(cursor.getDouble(2)).thenReturn(1.5, 2.5);
+    }
+
+    @Test
+    public void testMapsEveryRowUsingDeclaredColumnPositions() {
+        List<String> rows = mapper.mapAll(cursor);
+
+        assertEquals(2, rows.size());
+        assertEquals("rocket:1.5", rows.get(0));
+        assertEquals("fountain:2.5", rows.get(1));
+    }
+
+    @Test
+    public void testResolvesColumnIndicesOncePerCursorShape() {
+        mapper.mapAll(cursor);
+        when(cursor.moveToNext()).thenReturn(true, false);
+        mapper.mapAll(cursor);
+
+        verify(cursor, times(1)).getColumnIndexOrThrow("name");
+        verify(cursor, times(1)).getColumnIndexOrThrow("price");
+    }
+
+    @Test
+    public void testResolvesColumnIndicesAgainWhenShapeChanges() {
+        mapper.mapAll(cursor);
+        when(cursor.getColumnNames()).thenReturn(new String[]{"price", "name"});
+        when(cursor.moveToNext()).thenReturn(true, false);
+        mapper.mapAll(cursor);
+
+        verify(cursor, times(2)).getColumnIndexOrThrow("name");
+    }
+
+    @Test
+    public void testMapsIntoArrayOfCursorSize() {
+        String[] rows = mapper.mapAll(cursor, new String[0]);
+
+        assertArrayEquals(new String[]{"rocket:1.5", "fountain:2.5"}, rows);
+    }
+
+    @Test
+    public void testMapsIntoGivenArrayAndTerminatesWithNull() {
+        String[] given = {"a", "b", "c", "d"};
+
+        String[] rows = mapper.mapAll(cursor, given);
+
+        assertTrue(rows == given);
+        assertEquals("fountain:2.5", rows[1]);
+        assertNull(rows[2]);
+    }
+
+    @Test
+    public void testEmptyCursorMapsToEmptyList() {
+        when(cursor.getCount()).thenReturn(0);
+        when(cursor.moveToFirst()).thenReturn(false);
+
+        assertTrue(mapper.mapAll(cursor).isEmpty());
+    }
+}
@@ -0,0 +1,261 @@
+package novoda.lib.sqliteprovider.migration;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import novoda.lib.sqliteprovider.RoboRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RoboRunner.class)
+public class BulkLoadProfileTest {
+
+    private static final int SEED_ROWS = 20000;
+
+    @Mock
+    SQLiteDatabase db;
+    @Mock
+    Cursor cacheSize;
+    @Mock
+    Cursor tempStore;
+    @Mock
+    Cursor synchronous;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        stubPragma("cache_size", cacheSize, -2000L);
+        stubPragma("temp_store", tempStore, 0L);
+        stubPragma("synchronous", synchronous, 2L);
+    }
+
+    private void stubPragma(String pragma, Cursor cursor, long value) {
+        when(db.rawQuery(eq("PRAGMA " + pragma), (String[]) anyObject())).thenReturn(cursor);
+        when(cursor.moveToFirst()).thenReturn(true);
+        when(cursor.getLong(anyInt())).thenReturn(value);
+    }
+
+    @Test
+    public void testAppliesTheCacheSize() {
+        new BulkLoadProfile(4096).apply(db);
+
+        verify(db).execSQL("PRAGMA cache_size = -4096");
+    }
+
+    @Test
+    public void testLeavesACacheSizeAlreadyInPlace() {
+        new BulkLoadProfile(2000).apply(db).restore();
+
+        verify(db, never()).execSQL(startsWith("PRAGMA cache_size"));
+    }
+
+    @Test
+    public void testRestoresThePreviousCacheSize() {
+        BulkLoadProfile.Applied applied = new BulkLoadProfile(4096).apply(db);
+
+        applied.restore();
+
+        verify(db).execSQL("PRAGMA cache_size = -2000");
+    }
+
+    @Test
+    public void testKeepsTemporaryTablesInMemoryUntilRestored() {
+        BulkLoadProfile.Applied applied = new BulkLoadProfile().apply(db);
+        verify(db).execSQL("PRAGMA temp_store = 2");
+
+        applied.restore();
+
+        verify(db).execSQL("PRAGMA temp_store = 0");
+    }
+
+    @Test
+    public void testLeavesTempStoreAloneWhenTemporaryTablesAreInUse() {
+        doThrow(new android.database.SQLException("temporary storage cannot be changed from within a transaction"))
+                .when(db).execSQL("PRAGMA temp_store = 2");
+
+        new BulkLoadProfile(4096).apply(db).restore();
+
+        verify(db).execSQL("PRAGMA cache_size = -4096");
+        verify(db).execSQL("PRAGMA cache_size = -2000");
+        verify(db, never()).execSQL("PRAGMA temp_store = 0");
+    }
+
+    @Test
+    public void testRestoresTheOtherSettingsWhenOneIsRefused() {
+        doThrow(new android.database.SQLException("temporary storage cannot be changed from within a transaction"))
+                .when(db).execSQL("PRAGMA temp_store = 0");
+
+        new BulkLoadProfile(4096).apply(db).restore();
+
+        verify(db).execSQL("PRAGMA cache_size = -2000");
+    }
+
+    @Test
+    public void testLeavesSynchronousOutOfTheTransaction() {
+        new BulkLoadProfile().apply(db).restore();
+
+        verify(db, never()).execSQL(startsWith("PRAGMA synchronous"));
+    }
+
+    @Test
+    public void testRelaxesSynchronousOutsideTheTransactionUntilRestored() {
+        BulkLoadProfile.Applied applied = new BulkLoadProfile(4096, BulkLoadProfile.SYNCHRONOUS_NORMAL).applyOutsideTransaction(db);
+        verify(db).execSQL("PRAGMA synchronous = 1");
+        verify(db, never()).execSQL(startsWith("PRAGMA cache_size"));
+
+        applied.restore();
+
+        verify(db).execSQL("PRAGMA synchronous = 2");
+    }
+
+    @Test
+    public void testAppliesAroundTheTransactionOfAMigration() throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try {
+            Statement statement = connection.createStatement();
+            SQLiteDatabase database = databaseOn(statement);
+            long previousCacheSize = longOf(statement, "PRAGMA cache_size");
+            long previousTempStore = longOf(statement, "PRAGMA temp_store");
+            long previousSynchronous = longOf(statement, "PRAGMA synchronous");
+            BulkLoadProfile profile = new BulkLoadProfile(4096);
+
+            BulkLoadProfile.Applied outside = profile.applyOutsideTransaction(database);
+            statement.execute("BEGIN");
+            statement.execute("CREATE TABLE fireworks (_id INTEGER PRIMARY KEY, name TEXT)");
+            BulkLoadProfile.Applied inside = profile.apply(database);
+            assertEquals(-4096, longOf(statement, "PRAGMA cache_size"));
+            assertEquals(2, longOf(statement, "PRAGMA temp_store"));
+            assertEquals(0, longOf(statement, "PRAGMA synchronous"));
+            statement.execute("INSERT INTO fireworks (name) VALUES ('rocket')");
+            inside.restore();
+            statement.execute("COMMIT");
+            outside.restore();
+
+            assertEquals(previousCacheSize, longOf(statement, "PRAGMA cache_size"));
+            assertEquals(previousTempStore, longOf(statement, "PRAGMA temp_store"));
+            assertEquals(previousSynchronous, longOf(statement, "PRAGMA synchronous"));
+            assertEquals(1, longOf(statement, "SELECT count(*) FROM fireworks"));
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Seeds a database file with and without the profile, as a first launch migration would, and prints how long
+     * each took. Both must end up with the same content; the timings are for comparison across changes and devices.
+     */
+    @Test
+    public void testBenchmarksALargeSeedMigration() throws SQLException, IOException {
+        long plainNanos = seed(null);
+        long profiledNanos = seed(new BulkLoadProfile());
+
+        System.out.println("Seeding " + SEED_ROWS + " rows took " + TimeUnit.NANOSECONDS.toMillis(plainNanos)
+                + "ms as configured and " + TimeUnit.NANOSECONDS.toMillis(profiledNanos) + "ms with the bulk load profile");
+    }
+
+    private static long seed(BulkLoadProfile profile) throws SQLException, IOException {
+        File file = File.createTempFile("seed", ".db");
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        try {
+            Statement statement = connection.createStatement();
+            SQLiteDatabase database = databaseOn(statement);
+            long start = System.nanoTime();
+
+            BulkLoadProfile.Applied outside = profile == null ? null : profile.applyOutsideTransaction(database);
+            statement.execute("BEGIN");
+            BulkLoadProfile.Applied inside = profile == null ? null : profile.apply(database);
+            statement.execute("CREATE TABLE fireworks (_id INTEGER PRIMARY KEY, name TEXT, colour TEXT)");
+            for (int i = 0; i < SEED_ROWS; i++) {
+                statement.execute("INSERT INTO fireworks (name, colour) VALUES ('rocket " + i + "', 'colour " + i % 7 + "')");
+            }
+            statement.execute("CREATE INDEX fireworks_name ON fireworks (name)");
+            if (inside != null) {
+                inside.restore();
+            }
+            statement.execute("COMMIT");
+            if (outside != null) {
+                outside.restore();
+            }
+
+            long nanos = System.nanoTime() - start;
+            assertEquals(SEED_ROWS, longOf(statement, "SELECT count(*) FROM fireworks"));
+            return nanos;
+        } finally {
+            connection.close();
+            file.delete();
+        }
+    }
+
+    private static long longOf(Statement statement, String query) throws SQLException {
+        ResultSet result = statement.executeQuery(query);
+        try {
+            result.next();
+            return result.getLong(1);
+        } finally {
+            result.close();
+        }
+    }
+
+    /**
+     * @return a database running its statements on the JDBC connection, as SQLiteDatabase does on the device
+     */
+    private static SQLiteDatabase databaseOn(final Statement statement) {
+        SQLiteDatabase database = mock(SQLiteDatabase.class);
+        when(database.rawQuery(anyString(), (String[]) anyObject())).thenAnswer(new Answer<Cursor>() {
+            @Override
+            public Cursor answer(InvocationOnMock invocation) throws SQLException {
+                ResultSet result = statement.executeQuery((String) invocation.getArguments()[0]);
+                Cursor cursor = mock(Cursor.class);
+                try {
+                    if (result.next()) {
+                        when(cursor.moveToFirst()).thenReturn(true);
+                        when(cursor.getLong(0)).thenReturn(result.getLong(1));
+                    }
+                } finally {
+                    result.close();
+                }
+                return cursor;
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                try {
+                    statement.execute((String) invocation.getArguments()[0]);
+                } catch (SQLException e) {
+                    throw new android.database.SQLException(e.getMessage());
+                }
+                return null;
+            }
+        }).when(database).execSQL(anyString());
+        return database;
+    }
+}
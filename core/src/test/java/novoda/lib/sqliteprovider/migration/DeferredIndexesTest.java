@@ -0,0 +1,41 @@
+package novoda.lib.sqliteprovider.migration;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeferredIndexesTest {
+
+    private static final String INDEX = "CREATE INDEX fireworks_name ON fireworks (name);";
+    private static final String UNIQUE_INDEX = "CREATE UNIQUE INDEX shop_name ON shop (name);";
+
+    private final DeferredIndexes indexes = new DeferredIndexes();
+
+    @Test
+    public void testDefersOnlyNonUniqueIndices() {
+        assertTrue(indexes.defer(INDEX));
+        assertFalse(indexes.defer(UNIQUE_INDEX));
+        assertFalse(indexes.defer("INSERT INTO fireworks (name) VALUES ('rocket');"));
+    }
+
+    @Test
+    public void testKeepsIndicesDeferredWhileRowsAreInserted() {
+        indexes.defer(INDEX);
+
+        assertEquals(Collections.emptyList(), indexes.releaseBefore("INSERT INTO fireworks (name) VALUES ('rocket');"));
+        assertEquals(Collections.emptyList(), indexes.releaseBefore("replace into fireworks (name) values ('rocket');"));
+    }
+
+    @Test
+    public void testReleasesIndicesBeforeAnyOtherStatement() {
+        indexes.defer(INDEX);
+
+        assertEquals(Arrays.asList(INDEX), indexes.releaseBefore("UPDATE fireworks SET name = 'big rocket';"));
+        assertEquals(Collections.emptyList(), indexes.release());
+    }
+}
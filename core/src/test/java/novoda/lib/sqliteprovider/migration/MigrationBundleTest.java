@@ -0,0 +1,209 @@
+package novoda.lib.sqliteprovider.migration;
+
+import android.content.res.AssetManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import novoda.lib.sqliteprovider.RoboRunner;
+import novoda.lib.sqliteprovider.util.SQLStatementIterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+@RunWith(RoboRunner.class)
+public class MigrationBundleTest {
+
+    private static final String BUNDLE = "migrations.bundle";
+    private static final String[] CREATE = {"CREATE TABLE shops (_id INTEGER PRIMARY KEY, name TEXT);",
+            "CREATE TABLE fireworks (_id INTEGER PRIMARY KEY, shop_id INTEGER);"};
+    private static final String[] SEED = {"INSERT INTO shops (name) VALUES ('Bangs');"};
+    private static final String[] RENAME = {"ALTER TABLE shops RENAME TO stores;"};
+
+    @Mock
+    private AssetManager assets;
+
+    private byte[] bundle;
+
+    @Before
+    public void init() throws IOException {
+        MockitoAnnotations.initMocks(this);
+        bundle = bundleOf(false);
+        when(assets.open(BUNDLE)).thenAnswer(new Answer<InputStream>() {
+            @Override
+            public InputStream answer(InvocationOnMock invocation) {
+                return new SkipNothingInputStream(new ByteArrayInputStream(bundle));
+            }
+        });
+    }
+
+    @Test
+    public void testReadsTheVersionAndIndex() throws IOException {
+        MigrationBundle migrations = MigrationBundle.openIfPresent(assets, BUNDLE);
+
+        assertEquals(3, migrations.getVersion());
+        assertEquals(3, migrations.getEntries().size());
+        assertEquals("1_create.sql", migrations.getEntries().get(0).getName());
+        assertEquals(2, migrations.getEntries().get(0).getStatementCount());
+        assertEquals(3, migrations.getEntries().get(2).getVersion());
+    }
+
+    @Test
+    public void testIsAbsentWithoutTheAsset() throws IOException {
+        when(assets.open(BUNDLE)).thenThrow(new FileNotFoundException(BUNDLE));
+
+        assertNull(MigrationBundle.openIfPresent(assets, BUNDLE));
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherFiles() throws IOException {
+        bundle = "CREATE TABLE shops (_id INTEGER);".getBytes("UTF-8");
+
+        MigrationBundle.openIfPresent(assets, BUNDLE);
+    }
+
+    @Test
+    public void testReadsTheStatementsOfEachEntry() throws IOException {
+        MigrationBundle migrations = MigrationBundle.openIfPresent(assets, BUNDLE);
+        MigrationBundle.Reader reader = migrations.read();
+
+        assertEquals(Arrays.asList(CREATE), readAll(reader.statementsOf(migrations.getEntries().get(0))));
+        assertEquals(Arrays.asList(SEED), readAll(reader.statementsOf(migrations.getEntries().get(1))));
+        assertEquals(Arrays.asList(RENAME), readAll(reader.statementsOf(migrations.getEntries().get(2))));
+        reader.close();
+    }
+
+    @Test
+    public void testSkipsEntriesAlreadyMigrated() throws IOException {
+        MigrationBundle migrations = MigrationBundle.openIfPresent(assets, BUNDLE);
+        MigrationBundle.Reader reader = migrations.read();
+
+        reader.skip(migrations.getEntries().get(0));
+        reader.skip(migrations.getEntries().get(1));
+
+        assertEquals(Arrays.asList(RENAME), readAll(reader.statementsOf(migrations.getEntries().get(2))));
+        reader.close();
+    }
+
+    @Test
+    public void testSkipsTheRestOfAPartiallyReadEntry() throws IOException {
+        MigrationBundle migrations = MigrationBundle.openIfPresent(assets, BUNDLE);
+        MigrationBundle.Reader reader = migrations.read();
+
+        assertEquals(CREATE[0], reader.statementsOf(migrations.getEntries().get(0)).nextStatement());
+
+        assertEquals(Arrays.asList(SEED), readAll(reader.statementsOf(migrations.getEntries().get(1))));
+        reader.close();
+    }
+
+    @Test
+    public void testRejectsAnEntryNotMatchingItsChecksum() throws IOException {
+        bundle = bundleOf(true);
+        MigrationBundle migrations = MigrationBundle.openIfPresent(assets, BUNDLE);
+        MigrationBundle.Reader reader = migrations.read();
+
+        try {
+            readAll(reader.statementsOf(migrations.getEntries().get(0)));
+            fail("Expected the checksum of the first entry to be rejected");
+        } catch (IOException e) {
+            assertEquals("Checksum mismatch in bundled migration 1_create.sql", e.getMessage());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void testRejectsATruncatedBundle() throws IOException {
+        MigrationBundle migrations = MigrationBundle.openIfPresent(assets, BUNDLE);
+        bundle = Arrays.copyOf(bundle, bundle.length - RENAME[0].length() - 4);
+        MigrationBundle.Reader reader = migrations.read();
+
+        try {
+            reader.skip(migrations.getEntries().get(0));
+            reader.skip(migrations.getEntries().get(1));
+            reader.skip(migrations.getEntries().get(2));
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static List<String> readAll(SQLStatementIterator statements) throws IOException {
+        List<String> all = new ArrayList<String>();
+        for (String statement = statements.nextStatement(); statement != null; statement = statements.nextStatement()) {
+            all.add(statement);
+        }
+        return all;
+    }
+
+    /**
+     * Writes the layout documented by {@link MigrationBundle}, the way the bundleMigrations task does.
+     */
+    private static byte[] bundleOf(boolean corruptFirstChecksum) throws IOException {
+        String[] names = {"1_create.sql", "2_seed.sql", "3_rename.sql"};
+        String[][] files = {CREATE, SEED, RENAME};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MigrationBundle.MAGIC);
+        out.writeInt(MigrationBundle.FORMAT_VERSION);
+        out.writeInt(files.length);
+        out.writeInt(files.length);
+        byte[][] sections = new byte[files.length][];
+        for (int i = 0; i < files.length; i++) {
+            ByteArrayOutputStream section = new ByteArrayOutputStream();
+            DataOutputStream sectionOut = new DataOutputStream(section);
+            CRC32 crc = new CRC32();
+            for (String statement : files[i]) {
+                byte[] encoded = statement.getBytes("UTF-8");
+                sectionOut.writeInt(encoded.length);
+                sectionOut.write(encoded);
+                crc.update(encoded);
+            }
+            sections[i] = section.toByteArray();
+            out.writeUTF(names[i]);
+            out.writeInt(i + 1);
+            out.writeLong(corruptFirstChecksum && i == 0 ? crc.getValue() + 1 : crc.getValue());
+            out.writeInt(files[i].length);
+            out.writeInt(sections[i].length);
+        }
+        for (byte[] section : sections) {
+            out.write(section);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Skips nothing, as asset streams may, so that skipping has to fall back to reading.
+     */
+    private static final class SkipNothingInputStream extends FilterInputStream {
+
+        SkipNothingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public long skip(long n) {
+            return 0;
+        }
+    }
+}
@@ -2,10 +2,12 @@
 package novoda.lib.sqliteprovider.migration;
 
 import android.content.res.AssetManager;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -26,10 +28,13 @@ public class MigrationsTest {
 
     @Mock
     SQLiteDatabase db;
+    @Mock
+    Cursor cursor;
 
     @Before
     public void init() {
         MockitoAnnotations.initMocks(this);
+        when(db.rawQuery(anyString(), (String[]) anyObject())).thenReturn(cursor);
     }
 
     @Test
@@ -86,6 +91,39 @@ public class MigrationsTest {
         verify(db).setVersion(123456);
     }
 
+    @Test
+    public void testReportsEveryMigratedFile() throws IOException {
+        String execute = "CREATE TABLE test(id integer);\nCREATE INDEX test_id ON test(id);";
+        when(db.getVersion()).thenReturn(0);
+        AssetManager manager = mock(AssetManager.class);
+        when(manager.list(anyString())).thenReturn(new String[] {
+                "1_test.sql", "2_test.sql"
+        });
+        when(manager.open(anyString(), anyInt())).thenReturn(
+                new ByteArrayInputStream(execute.getBytes("UTF-8")), new ByteArrayInputStream(new byte[0]));
+
+        MigrationReport report = Migrations.migrate(db, manager, "sql", new MigrationReport(Long.MAX_VALUE));
+
+        assertThat(report.getFiles().size(), equalTo(2));
+        assertThat(report.getFiles().get(0).getStatementCount(), equalTo(2));
+        assertThat(report.getFiles().get(1).getStatementCount(), equalTo(0));
+        assertTrue(report.getFiles().get(0).isCommitted());
+        assertFalse(report.hasSlowStatements());
+        // the commit belongs to whoever began the enclosing transaction
+        assertThat(report.getCommitMillis(), equalTo(-1L));
+    }
+
+    @Test
+    public void testReportsTheCommitOfTheEnclosingTransaction() {
+        MigrationReport report = new MigrationReport();
+
+        report.onCommitted(TimeUnit.MILLISECONDS.toNanos(12));
+
+        assertThat(report.getCommitMillis(), equalTo(12L));
+        assertThat(report.getTotalMillis(), equalTo(12L));
+        assertTrue(report.toString().startsWith("Migrated 0 file(s) in 12ms, committed in 12ms"));
+    }
+
     @Test
     public void testNoFiles() throws IOException {
         when(db.getVersion()).thenReturn(0);
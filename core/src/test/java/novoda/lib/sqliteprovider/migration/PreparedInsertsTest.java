@@ -0,0 +1,129 @@
+package novoda.lib.sqliteprovider.migration;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import novoda.lib.sqliteprovider.RoboRunner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RoboRunner.class)
+public class PreparedInsertsTest {
+
+    @Mock
+    private SQLiteDatabase db;
+    @Mock
+    private SQLiteStatement fireworksInsert;
+    @Mock
+    private SQLiteStatement shopsInsert;
+
+    private PreparedInserts preparedInserts;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        when(db.compileStatement("INSERT INTO fireworks (name, price, noise, picture) VALUES (?,?,?,?)")).thenReturn(fireworksInsert);
+        when(db.compileStatement("INSERT INTO shops (name) VALUES (?)")).thenReturn(shopsInsert);
+        preparedInserts = new PreparedInserts(db);
+    }
+
+    @Test
+    public void testBindsTheLiteralsOfEachRowToOneCompiledStatement() {
+        preparedInserts.execute("INSERT INTO fireworks (name, price, noise, picture) VALUES ('Rocket', 1.5, -3, X'0aff');");
+        preparedInserts.execute("INSERT INTO fireworks (name, price, noise, picture) VALUES ('it''s', 2, NULL, NULL);");
+
+        verify(db, times(1)).compileStatement(anyString());
+        InOrder inOrder = inOrder(fireworksInsert);
+        inOrder.verify(fireworksInsert).clearBindings();
+        inOrder.verify(fireworksInsert).bindString(1, "Rocket");
+        inOrder.verify(fireworksInsert).bindDouble(2, 1.5d);
+        inOrder.verify(fireworksInsert).bindLong(3, -3L);
+        inOrder.verify(fireworksInsert).bindBlob(4, new byte[]{0x0a, (byte) 0xff});
+        inOrder.verify(fireworksInsert).executeInsert();
+        inOrder.verify(fireworksInsert).clearBindings();
+        inOrder.verify(fireworksInsert).bindString(1, "it's");
+        inOrder.verify(fireworksInsert).bindLong(2, 2L);
+        inOrder.verify(fireworksInsert).bindNull(3);
+        inOrder.verify(fireworksInsert).bindNull(4);
+        inOrder.verify(fireworksInsert).executeInsert();
+        verify(db, never()).execSQL(anyString());
+    }
+
+    @Test
+    public void testCompilesAgainWhenTheTableOrColumnsChange() {
+        preparedInserts.execute("INSERT INTO fireworks (name, price, noise, picture) VALUES ('Rocket', 1.5, -3, NULL);");
+        preparedInserts.execute("INSERT INTO shops (name) VALUES ('Bangs');");
+
+        verify(fireworksInsert).close();
+        verify(shopsInsert).bindString(1, "Bangs");
+        verify(shopsInsert).executeInsert();
+    }
+
+    @Test
+    public void testExecutesOtherStatementsAsTheyAre() {
+        preparedInserts.execute("INSERT INTO fireworks (name, price, noise, picture) VALUES ('Rocket', 1.5, -3, NULL);");
+        preparedInserts.execute("INSERT INTO shops (name) VALUES (upper('bangs'));");
+        preparedInserts.execute("CREATE INDEX shop_name ON shops (name);");
+
+        verify(fireworksInsert).close();
+        verify(db).execSQL("INSERT INTO shops (name) VALUES (upper('bangs'));");
+        verify(db).execSQL("CREATE INDEX shop_name ON shops (name);");
+        verify(db, never()).compileStatement("INSERT INTO shops (name) VALUES (?)");
+    }
+
+    @Test
+    public void testReleaseClosesTheCompiledStatement() {
+        preparedInserts.execute("INSERT INTO shops (name) VALUES ('Bangs');");
+
+        preparedInserts.release();
+        preparedInserts.release();
+
+        verify(shopsInsert, times(1)).close();
+    }
+
+    @Test
+    public void testSplitsSingleRowInsertIntoHeaderAndValues() {
+        PreparedInserts.Insert insert = PreparedInserts.Insert.parse("INSERT INTO fireworks (name, price, noise) VALUES ('Rocket; big', 1.5, -3);");
+
+        assertEquals("INSERT INTO fireworks (name, price, noise)", insert.header);
+        assertEquals("INSERT INTO fireworks (name, price, noise) VALUES (?,?,?)", insert.preparedSql());
+        assertEquals(Arrays.<Object>asList("Rocket; big", 1.5d, -3L), insert.values);
+    }
+
+    @Test
+    public void testReadsEscapedStringsNullsAndBlobs() {
+        PreparedInserts.Insert insert = PreparedInserts.Insert.parse("insert or replace into t(a, b, c) values ('it''s (fine)', NULL, X'0aFF');");
+
+        assertEquals("it's (fine)", insert.values.get(0));
+        assertNull(insert.values.get(1));
+        assertArrayEquals(new byte[]{0x0a, (byte) 0xff}, (byte[]) insert.values.get(2));
+    }
+
+    @Test
+    public void testLeavesEverythingElseToSQLite() {
+        assertNull(PreparedInserts.Insert.parse("INSERT INTO t (a) VALUES (1),(2);"));
+        assertNull(PreparedInserts.Insert.parse("INSERT INTO t VALUES (1);"));
+        assertNull(PreparedInserts.Insert.parse("INSERT INTO t (a) VALUES (abs(-1));"));
+        assertNull(PreparedInserts.Insert.parse("INSERT INTO t (a) SELECT 1;"));
+        assertNull(PreparedInserts.Insert.parse("INSERT INTO t (a, b) VALUES (1);"));
+        assertNull(PreparedInserts.Insert.parse("INSERT INTO t (a) VALUES (99999999999999999999);"));
+        assertNull(PreparedInserts.Insert.parse("CREATE TABLE t (a INTEGER);"));
+    }
+}
@@ -0,0 +1,118 @@
+package novoda.lib.sqliteprovider.migration;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import novoda.lib.sqliteprovider.util.SQLStatementIterator;
+import novoda.lib.sqliteprovider.util.SQLStatementReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class StatementPipelineTest {
+
+    private final Map<String, String> files = new HashMap<String, String>();
+    private StatementPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        StringBuilder seed = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            seed.append("INSERT INTO t (a) VALUES (").append(i).append(");\n");
+        }
+        files.put("1_seed.sql", seed.toString());
+        files.put("2_more.sql", "CREATE TABLE u (b);\nINSERT INTO u (b) VALUES (1);\n");
+        files.put("3_broken.sql", "DELETE FROM u;\nDELETE FROM t");
+
+        pipeline = new StatementPipeline(Arrays.asList("1_seed.sql", "2_more.sql", "3_broken.sql"), new StatementPipeline.Files() {
+            @Override
+            public SQLStatementIterator open(String name) {
+                return new SQLStatementReader(new StringReader(files.get(name)));
+            }
+        }, 4);
+    }
+
+    @After
+    public void tearDown() {
+        pipeline.close();
+    }
+
+    @Test
+    public void testHandsOutStatementsFileByFileInOrder() throws IOException {
+        SQLStatementIterator seed = pipeline.nextFile();
+        for (int i = 0; i < 100; i++) {
+            assertEquals("INSERT INTO t (a) VALUES (" + i + ");", seed.nextStatement());
+        }
+        assertNull(seed.nextStatement());
+
+        SQLStatementIterator more = pipeline.nextFile();
+        assertEquals("CREATE TABLE u (b);", more.nextStatement());
+        assertEquals("INSERT INTO u (b) VALUES (1);", more.nextStatement());
+        assertNull(more.nextStatement());
+    }
+
+    @Test
+    public void testClosingAFileSkipsItsRemainingStatements() throws IOException {
+        SQLStatementIterator seed = pipeline.nextFile();
+        seed.nextStatement();
+        seed.close();
+
+        assertEquals("CREATE TABLE u (b);", pipeline.nextFile().nextStatement());
+    }
+
+    @Test
+    public void testReportsReadFailuresWithTheirFile() throws IOException {
+        pipeline.nextFile().close();
+        pipeline.nextFile().close();
+        SQLStatementIterator broken = pipeline.nextFile();
+
+        assertEquals("DELETE FROM u;", broken.nextStatement());
+        try {
+            broken.nextStatement();
+            fail("incomplete statement not reported");
+        } catch (IOException expected) {
+            // the last statement has no semicolon
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testForwardsErrorsEndingTheReader() throws IOException {
+        pipeline.close();
+        pipeline = new StatementPipeline(Arrays.asList("1_seed.sql"), new StatementPipeline.Files() {
+            @Override
+            public SQLStatementIterator open(String name) {
+                throw new StackOverflowError("too deep");
+            }
+        }, 4);
+
+        try {
+            pipeline.nextFile().nextStatement();
+            fail("error not forwarded");
+        } catch (StackOverflowError expected) {
+            assertEquals("too deep", expected.getMessage());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testStopsWaitingOnceTheReaderIsGone() {
+        pipeline.close();
+        SQLStatementIterator seed = pipeline.nextFile();
+
+        try {
+            for (int i = 0; i <= 100; i++) {
+                seed.nextStatement();
+            }
+            fail("waited past the end of the reader");
+        } catch (IOException expected) {
+            // the reader was interrupted before queuing the whole file
+        }
+    }
+}
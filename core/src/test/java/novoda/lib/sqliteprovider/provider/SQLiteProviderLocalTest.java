@@ -8,6 +8,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.net.Uri;
+import android.os.Bundle;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -19,14 +20,17 @@ import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.shadows.ShadowContentUris;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.List;
 
 import novoda.lib.sqliteprovider.RoboRunner;
+import novoda.lib.sqliteprovider.cursor.ColumnarSnapshot;
 import novoda.lib.sqliteprovider.sqlite.ExtendedSQLiteQueryBuilder;
 import novoda.lib.sqliteprovider.sqlite.MigratingSQLiteOpenHelper;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.matchers.JUnitMatchers.hasItems;
 import static org.mockito.Matchers.anyObject;
@@ -61,6 +65,8 @@ public class SQLiteProviderLocalTest {
         stub(builder.query((SQLiteDatabase) anyObject(), (String[]) anyObject(), anyString(), (String[]) anyObject(), anyString(),
                 anyString(), anyString(), anyString())).toReturn(mockCursor);
         stub(db.rawQuery(anyString(), (String[]) anyObject())).toReturn(mockCursor);
+        stub(db.query(anyString(), (String[]) anyObject(), anyString(), (String[]) anyObject(), anyString(), anyString(),
+                anyString())).toReturn(mockCursor);
 
         provider = new SQLiteProviderImpl();
         provider.onCreate();
@@ -303,6 +309,56 @@ public class SQLiteProviderLocalTest {
         verify(mockCursor).setNotificationUri((ContentResolver) anyObject(), eq(Uri.parse("content://test.com/table1")));
     }
 
+    @Test
+    public void testCallQueriesTheRequestedColumnsIntoASnapshot() {
+        when(mockCursor.getCount()).thenReturn(2);
+        when(mockCursor.moveToFirst()).thenReturn(true);
+        when(mockCursor.moveToNext()).thenReturn(true, false);
+        when(mockCursor.getColumnIndexOrThrow("price")).thenReturn(0);
+        when(mockCursor.getLong(0)).thenReturn(3L, 4L);
+        Bundle request = new Bundle();
+        request.putStringArray(ColumnarSnapshot.EXTRA_LONG_COLUMNS, new String[]{"price"});
+        request.putString(ColumnarSnapshot.EXTRA_SELECTION, "price > 2");
+
+        Bundle snapshot = provider.call(ColumnarSnapshot.METHOD_QUERY, "content://test.com/fireworks", request);
+
+        verify(builder).setTables("fireworks");
+        verify(builder).query((SQLiteDatabase) anyObject(), eq(new String[]{"price"}), eq("price > 2"), (String[]) anyObject(), anyString(),
+                anyString(), anyString(), anyString());
+        assertArrayEquals(new long[]{3, 4}, ColumnarSnapshot.getLongs(snapshot, "price"));
+        verify(mockCursor).close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCallRejectsAMissingUri() {
+        provider.call(ColumnarSnapshot.METHOD_QUERY, null, new Bundle());
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testOpenFileRejectsAnUnknownExportFormat() throws FileNotFoundException {
+        provider.openFile(Uri.parse("content://test.com/table1?format=xml"), "r");
+    }
+
+    @Test
+    public void testNoStreamTypesForAnUnknownExportFormat() {
+        assertThat(provider.getStreamTypes(Uri.parse("content://test.com/table1?format=xml"), "*/*"), is((String[]) null));
+    }
+
+    @Test
+    public void testStreamTypesFollowTheMimeTypeFilter() {
+        Uri uri = Uri.parse("content://test.com/table1");
+
+        assertArrayEquals(new String[]{"text/csv", "application/x-ndjson"}, provider.getStreamTypes(uri, "*/*"));
+        assertArrayEquals(new String[]{"text/csv"}, provider.getStreamTypes(uri, "text/*"));
+        assertThat(provider.getStreamTypes(uri, "image/*"), is((String[]) null));
+        assertThat(provider.getStreamTypes(Uri.parse("content://test.com/table1?format=csv"), "application/*"), is((String[]) null));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testOpenTypedAssetFileRejectsAFormatOutsideTheFilter() throws FileNotFoundException {
+        provider.openTypedAssetFile(Uri.parse("content://test.com/table1?format=csv"), "application/*", null);
+    }
+
     private void update(String uri, ContentValues initialValues, String selection, String[] selectionArgs) {
         provider.update(Uri.parse("content://" + uri), initialValues, selection, selectionArgs);
     }
@@ -0,0 +1,120 @@
+package novoda.lib.sqliteprovider.provider.action;
+
+import android.database.AbstractWindowedCursor;
+import android.database.Cursor;
+import android.os.Build;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import novoda.lib.sqliteprovider.provider.action.ExportHelper.Format;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ExportHelperTest {
+
+    @Mock
+    private Cursor cursor;
+
+    @Mock
+    private AbstractWindowedCursor windowedCursor;
+
+    private final ExportHelper exportHelper = new ExportHelper(null, Build.VERSION_CODES.HONEYCOMB);
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        when(cursor.getColumnNames()).thenReturn(new String[]{"_id", "name", "price"});
+        when(cursor.moveToNext()).thenReturn(true, false);
+        when(cursor.getType(0)).thenReturn(Cursor.FIELD_TYPE_INTEGER);
+        when(cursor.getType(1)).thenReturn(Cursor.FIELD_TYPE_STRING);
+        when(cursor.getType(2)).thenReturn(Cursor.FIELD_TYPE_NULL);
+        when(cursor.getString(0)).thenReturn("1");
+        when(cursor.getLong(0)).thenReturn(1L);
+        when(cursor.getString(1)).thenReturn("big \"bang\", loud");
+    }
+
+    @Test
+    public void testWritesCsvWithHeaderAndQuotedFields() throws IOException {
+        StringWriter writer = new StringWriter();
+
+        exportHelper.write(cursor, Format.CSV, writer);
+
+        assertEquals("_id,name,price\r\n1,\"big \"\"bang\"\", loud\",\r\n", writer.toString());
+    }
+
+    @Test
+    public void testWritesOneJsonObjectPerLine() throws IOException {
+        StringWriter writer = new StringWriter();
+
+        exportHelper.write(cursor, Format.NDJSON, writer);
+
+        assertEquals("{\"_id\":1,\"name\":\"big \\\"bang\\\", loud\",\"price\":null}\n", writer.toString());
+    }
+
+    @Test
+    public void testMarksTheFailureAfterTheRowsWritten() throws IOException {
+        StringWriter writer = new StringWriter();
+
+        exportHelper.writeErrorMarker(new IllegalStateException("window \"full\""), Format.CSV, writer);
+        exportHelper.writeErrorMarker(new IllegalStateException("window \"full\""), Format.NDJSON, writer);
+
+        assertEquals("\r\n#error,\"window \"\"full\"\"\"\r\n\n{\"#error\":\"window \\\"full\\\"\"}\n", writer.toString());
+    }
+
+    @Test
+    public void testFailsToOpenAnExportFileTheCursorCouldNotFill() throws IOException {
+        File directory = File.createTempFile("export", "");
+        directory.delete();
+        directory.mkdirs();
+        when(cursor.moveToNext()).thenThrow(new IllegalStateException("window full"));
+
+        try {
+            new ExportHelper(directory, Build.VERSION_CODES.FROYO).export(cursor, Format.CSV);
+            fail("Expected the failed export not to open");
+        } catch (FileNotFoundException e) {
+            assertEquals("Could not read export: window full", e.getMessage());
+        }
+
+        verify(cursor).close();
+        assertEquals(0, directory.list().length);
+        directory.delete();
+    }
+
+    @Test
+    public void testReadsTypesFromTheCursorWindowBeforeHoneycomb() throws IOException {
+        when(windowedCursor.getColumnNames()).thenReturn(new String[]{"_id", "price", "name", "sold"});
+        when(windowedCursor.moveToNext()).thenReturn(true, false);
+        when(windowedCursor.isLong(0)).thenReturn(true);
+        when(windowedCursor.getLong(0)).thenReturn(1L);
+        when(windowedCursor.isFloat(1)).thenReturn(true);
+        when(windowedCursor.getDouble(1)).thenReturn(2.5);
+        when(windowedCursor.getString(2)).thenReturn("rocket");
+        when(windowedCursor.isNull(3)).thenReturn(true);
+        StringWriter writer = new StringWriter();
+
+        new ExportHelper(null, Build.VERSION_CODES.FROYO).write(windowedCursor, Format.NDJSON, writer);
+
+        assertEquals("{\"_id\":1,\"price\":2.5,\"name\":\"rocket\",\"sold\":null}\n", writer.toString());
+    }
+
+    @Test
+    public void testWritesValuesOfOtherCursorsAsTextBeforeHoneycomb() throws IOException {
+        when(cursor.getString(2)).thenReturn("3");
+        StringWriter writer = new StringWriter();
+
+        new ExportHelper(null, Build.VERSION_CODES.FROYO).write(cursor, Format.NDJSON, writer);
+
+        assertEquals("{\"_id\":\"1\",\"name\":\"big \\\"bang\\\", loud\",\"price\":\"3\"}\n", writer.toString());
+    }
+}
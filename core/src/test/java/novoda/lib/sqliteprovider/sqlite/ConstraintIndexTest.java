@@ -0,0 +1,76 @@
+package novoda.lib.sqliteprovider.sqlite;
+
+import android.content.ContentValues;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import novoda.lib.sqliteprovider.RoboRunner;
+import novoda.lib.sqliteprovider.util.Constraint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RoboRunner.class)
+public class ConstraintIndexTest {
+
+    private static final Constraint ID = new Constraint(Collections.singletonList("_id"));
+    private static final Constraint NAME_AND_SHOP = new Constraint(Arrays.asList("name", "shop_id"));
+    private static final Constraint NAME = new Constraint(Collections.singletonList("name"));
+
+    private final ConstraintIndex index = new ConstraintIndex(Arrays.asList(ID, NAME_AND_SHOP, NAME));
+
+    @Test
+    public void testReturnsFirstConstraintCoveredByValues() {
+        assertEquals(NAME_AND_SHOP, index.firstConstraintFor(values("name", "shop_id", "price")));
+    }
+
+    @Test
+    public void testSkipsConstraintsOnlyPartiallyCovered() {
+        assertEquals(NAME, index.firstConstraintFor(values("name", "price")));
+    }
+
+    @Test
+    public void testReturnsNullWhenNoConstraintIsCovered() {
+        assertNull(index.firstConstraintFor(values("price")));
+        assertNull(index.firstConstraintFor(values("price")));
+    }
+
+    @Test
+    public void testGivesSameAnswerOnceMemoised() {
+        assertEquals(ID, index.firstConstraintFor(values("_id", "name")));
+        assertEquals(ID, index.firstConstraintFor(values("_id", "name")));
+    }
+
+    @Test
+    public void testFallsBackToScanningWithMoreColumnsThanFitInAMask() {
+        List<String> columns = new ArrayList<String>();
+        for (int i = 0; i < 70; i++) {
+            columns.add("column" + i);
+        }
+        Constraint wide = new Constraint(columns);
+        ConstraintIndex wideIndex = new ConstraintIndex(Arrays.asList(wide, NAME));
+
+        assertEquals(NAME, wideIndex.firstConstraintFor(values("name")));
+    }
+
+    @Test
+    public void testTableWithoutConstraints() {
+        ConstraintIndex emptyIndex = new ConstraintIndex(Collections.<Constraint>emptyList());
+
+        assertNull(emptyIndex.firstConstraintFor(values("name")));
+    }
+
+    private static ContentValues values(String... keys) {
+        ContentValues values = new ContentValues();
+        for (String key : keys) {
+            values.put(key, "value");
+        }
+        return values;
+    }
+}
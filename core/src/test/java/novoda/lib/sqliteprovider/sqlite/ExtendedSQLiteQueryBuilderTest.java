@@ -10,7 +10,10 @@ import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 
 import novoda.lib.sqliteprovider.RoboRunner;
+import novoda.lib.sqliteprovider.util.ForeignKey;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Before;
@@ -44,6 +47,21 @@ public class ExtendedSQLiteQueryBuilderTest {
                 "test LEFT JOIN groups ON test.group_id=groups._id LEFT JOIN anothers ON test.another_id=anothers._id");
     }
 
+    @Test
+    public void testLeftJoinsFollowDeclaredForeignKeys() {
+        ExtendedSQLiteQueryBuilder builder = new ExtendedSQLiteQueryBuilder(qb);
+        when(qb.getTables()).thenReturn("people");
+        ForeignKey mother = new ForeignKey("people", Collections.singletonList("mother"), "mice",
+                Collections.singletonList("_id"), true);
+        ForeignKey address = new ForeignKey("people", Arrays.asList("street", "town"), "addresses",
+                Arrays.asList("street_name", "town_name"), true);
+
+        builder.addLeftJoins(mother, address);
+
+        verify(qb).setTables("people LEFT JOIN mice ON people.mother=mice._id"
+                + " LEFT JOIN addresses ON people.street=addresses.street_name AND people.town=addresses.town_name");
+    }
+
     @Test(expected = IllegalStateException.class)
     public void testShouldThrowAnExceptionIfTableNotSet() {
         ExtendedSQLiteQueryBuilder builder = new ExtendedSQLiteQueryBuilder(qb);
@@ -0,0 +1,127 @@
+package novoda.lib.sqliteprovider.sqlite;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import novoda.lib.sqliteprovider.RoboRunner;
+import novoda.lib.sqliteprovider.sqlite.DatabaseMetaInfo.SQLiteType;
+import novoda.lib.sqliteprovider.util.Constraint;
+import novoda.lib.sqliteprovider.util.ForeignKey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RoboRunner.class)
+public class MetaInfoStoreTest {
+
+    // after the magic number, the format version and the schema version
+    private static final long TABLES_OFFSET = 16;
+
+    private File file;
+    private MetaInfoStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("meta", ".bin");
+        file.delete();
+        store = new MetaInfoStore(file);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testLoadsNothingWhenNothingWasSaved() {
+        assertNull(store.load());
+    }
+
+    @Test
+    public void testRoundTripsTheSchemaModel() {
+        MetaInfoSnapshot snapshot = new MetaInfoSnapshot(42);
+        snapshot.tables = Arrays.asList("shop", "product");
+        Map<String, SQLiteType> columns = new HashMap<String, SQLiteType>();
+        columns.put("_id", SQLiteType.INTEGER);
+        columns.put("name", SQLiteType.TEXT);
+        snapshot.columns.put("shop", columns);
+        snapshot.columnNames.put("shop", new HashSet<String>(columns.keySet()));
+        snapshot.constraints.put("product", Collections.singletonList(new Constraint(Arrays.asList("name", "shop_id"))));
+        ForeignKey shop = new ForeignKey("product", Collections.singletonList("shop_id"), "shop", Collections.singletonList("_id"), true);
+        snapshot.foreignKeys.put("product", Collections.singletonList(shop));
+
+        store.save(snapshot);
+        MetaInfoSnapshot loaded = store.load();
+
+        assertEquals(42, loaded.schemaVersion);
+        assertEquals(snapshot.tables, loaded.tables);
+        assertEquals(columns, loaded.columns.get("shop"));
+        assertEquals(columns.keySet(), loaded.columnNames.get("shop"));
+        assertEquals(Arrays.asList("name", "shop_id"), loaded.constraints.get("product").get(0).getColumns());
+        List<ForeignKey> foreignKeys = loaded.foreignKeys.get("product");
+        assertEquals(1, foreignKeys.size());
+        assertEquals("shop", foreignKeys.get(0).getReferencedTable());
+        assertEquals(Collections.singletonList("shop_id"), foreignKeys.get(0).getColumns());
+        assertTrue(foreignKeys.get(0).isDeclared());
+    }
+
+    @Test
+    public void testKeepsTablesUnknownWhenTheyWereNeverRead() {
+        store.save(new MetaInfoSnapshot(1));
+
+        assertNull(store.load().tables);
+    }
+
+    @Test
+    public void testIgnoresAnUnreadableFile() throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+
+        assertNull(store.load());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testIgnoresANegativeCount() throws IOException {
+        store.save(new MetaInfoSnapshot(1));
+        overwriteInt(TABLES_OFFSET, -7);
+
+        assertNull(store.load());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testIgnoresACountLargerThanTheFile() throws IOException {
+        store.save(new MetaInfoSnapshot(1));
+        overwriteInt(TABLES_OFFSET + 4, Integer.MAX_VALUE);
+
+        assertNull(store.load());
+        assertFalse(file.exists());
+    }
+
+    private void overwriteInt(long offset, int value) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.seek(offset);
+            out.writeInt(value);
+        } finally {
+            out.close();
+        }
+    }
+}
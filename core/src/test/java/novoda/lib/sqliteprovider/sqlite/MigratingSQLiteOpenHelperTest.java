@@ -0,0 +1,142 @@
+package novoda.lib.sqliteprovider.sqlite;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import novoda.lib.sqliteprovider.RoboRunner;
+import novoda.lib.sqliteprovider.migration.BulkLoadProfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RoboRunner.class)
+public class MigratingSQLiteOpenHelperTest {
+
+    private static final byte[] CONTENT = "SQLite format 3\u0000prebuilt".getBytes();
+
+    @Mock
+    private Context context;
+    @Mock
+    private AssetManager assets;
+    @Mock
+    private SQLiteDatabase db;
+    @Mock
+    private BulkLoadProfile profile;
+
+    private File database;
+
+    @Before
+    public void init() throws IOException {
+        MockitoAnnotations.initMocks(this);
+        database = File.createTempFile("prebuilt", ".db");
+        database.delete();
+        when(context.getAssets()).thenReturn(assets);
+        when(context.getDatabasePath("test.db")).thenReturn(database);
+        when(assets.openFd("migrations.db")).thenThrow(new FileNotFoundException("compressed"));
+        when(assets.open("migrations.db")).thenReturn(new ByteArrayInputStream(CONTENT));
+    }
+
+    @After
+    public void tearDown() {
+        database.delete();
+    }
+
+    @Test
+    public void testInstallsThePrebuiltDatabaseOnce() throws IOException {
+        MigratingSQLiteOpenHelper helper = new MigratingSQLiteOpenHelper(context, "test.db", null, 1);
+
+        helper.installPrebuiltDatabase();
+        database.delete();
+        helper.installPrebuiltDatabase();
+
+        assertFalse(database.exists());
+        verify(assets, times(1)).open("migrations.db");
+    }
+
+    @Test
+    public void testInstallsIntoTheDatabasePathOfTheHelper() {
+        new MigratingSQLiteOpenHelper(context, "test.db", null, 1).installPrebuiltDatabase();
+
+        assertTrue(database.exists());
+        assertEquals(CONTENT.length, database.length());
+    }
+
+    @Test
+    public void testInstallsNothingWithoutAPrebuiltAsset() throws IOException {
+        new MigratingSQLiteOpenHelper(context, "test.db", null, 1) {
+            @Override
+            protected String getPrebuiltDatabaseAsset() {
+                return null;
+            }
+        }.installPrebuiltDatabase();
+
+        assertFalse(database.exists());
+        verify(assets, never()).open(anyString());
+    }
+
+    @Test
+    public void testMigratesFromScratchWhenTheCopyFails() throws IOException {
+        when(assets.open("migrations.db")).thenThrow(new IOException("apk went away"));
+
+        new MigratingSQLiteOpenHelper(context, "test.db", null, 1).installPrebuiltDatabase();
+
+        assertFalse(database.exists());
+    }
+
+    @Test
+    public void testRelaxesSynchronousBeforeMigrating() {
+        when(db.getVersion()).thenReturn(1);
+
+        helperWithProfile(2).onConfigure(db);
+
+        verify(profile).applyOutsideTransaction(db);
+    }
+
+    @Test
+    public void testLeavesSynchronousAloneWhenUpToDate() {
+        when(db.getVersion()).thenReturn(2);
+
+        helperWithProfile(2).onConfigure(db);
+
+        verify(profile, never()).applyOutsideTransaction(any(SQLiteDatabase.class));
+    }
+
+    @Test
+    public void testLeavesSynchronousAloneWhenReadOnly() {
+        when(db.getVersion()).thenReturn(1);
+        when(db.isReadOnly()).thenReturn(true);
+
+        helperWithProfile(2).onConfigure(db);
+
+        verify(profile, never()).applyOutsideTransaction(any(SQLiteDatabase.class));
+    }
+
+    private MigratingSQLiteOpenHelper helperWithProfile(int version) {
+        return new MigratingSQLiteOpenHelper(context, "test.db", null, version) {
+            @Override
+            protected BulkLoadProfile createBulkLoadProfile() {
+                return profile;
+            }
+        };
+    }
+}
@@ -0,0 +1,183 @@
+package novoda.lib.sqliteprovider.sqlite;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import novoda.lib.sqliteprovider.RoboRunner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RoboRunner.class)
+public class PrebuiltDatabaseTest {
+
+    private static final String ASSET = "migrations.db";
+    private static final byte[] CONTENT = "SQLite format 3\u0000prebuilt".getBytes();
+
+    @Mock
+    private AssetManager assets;
+    @Mock
+    private AssetFileDescriptor descriptor;
+
+    private File directory;
+    private File database;
+
+    @Before
+    public void init() throws IOException {
+        MockitoAnnotations.initMocks(this);
+        directory = File.createTempFile("prebuilt", "");
+        directory.delete();
+        database = new File(new File(directory, "databases"), "test.db");
+        when(assets.openFd(ASSET)).thenThrow(new FileNotFoundException("compressed"));
+        when(assets.open(ASSET)).thenReturn(new ByteArrayInputStream(CONTENT));
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    @Test
+    public void testCopiesACompressedAssetThroughAStream() throws IOException {
+        assertTrue(PrebuiltDatabase.installIfMissing(assets, ASSET, database));
+
+        assertArrayEquals(CONTENT, read(database));
+        assertFalse(new File(database.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testCopiesAnUncompressedAssetStraightFromTheApk() throws IOException {
+        File apk = new File(directory, "app.apk");
+        directory.mkdirs();
+        write(apk, "header".getBytes(), CONTENT, "trailer".getBytes());
+        doReturn(descriptor).when(assets).openFd(ASSET);
+        when(descriptor.createInputStream()).thenReturn(new FileInputStream(apk));
+        when(descriptor.getStartOffset()).thenReturn((long) "header".length());
+        when(descriptor.getLength()).thenReturn((long) CONTENT.length);
+
+        assertTrue(PrebuiltDatabase.installIfMissing(assets, ASSET, database));
+
+        assertArrayEquals(CONTENT, read(database));
+        verify(assets, never()).open(anyString());
+    }
+
+    @Test
+    public void testKeepsAnExistingDatabase() throws IOException {
+        database.getParentFile().mkdirs();
+        write(database, "existing".getBytes());
+
+        assertFalse(PrebuiltDatabase.installIfMissing(assets, ASSET, database));
+
+        assertArrayEquals("existing".getBytes(), read(database));
+        verify(assets, never()).open(anyString());
+    }
+
+    @Test
+    public void testInstallsNothingWithoutTheAsset() throws IOException {
+        when(assets.open(ASSET)).thenThrow(new FileNotFoundException(ASSET));
+
+        assertFalse(PrebuiltDatabase.installIfMissing(assets, ASSET, database));
+
+        assertFalse(database.exists());
+        assertFalse(new File(database.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testDeletesJournalsLeftByAPreviousDatabase() throws IOException {
+        database.getParentFile().mkdirs();
+        for (String suffix : Arrays.asList("-journal", "-wal", "-shm")) {
+            write(new File(database.getPath() + suffix), "stale".getBytes());
+        }
+
+        assertTrue(PrebuiltDatabase.installIfMissing(assets, ASSET, database));
+
+        assertFalse(new File(database.getPath() + "-journal").exists());
+        assertFalse(new File(database.getPath() + "-wal").exists());
+        assertFalse(new File(database.getPath() + "-shm").exists());
+    }
+
+    @Test
+    public void testLeavesNoDatabaseWhenTheCopyFails() throws IOException {
+        when(assets.open(ASSET)).thenReturn(new InputStream() {
+            private int remaining = 4;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining == 0) {
+                    throw new IOException("apk went away");
+                }
+                remaining--;
+                return 'x';
+            }
+        });
+
+        try {
+            PrebuiltDatabase.installIfMissing(assets, ASSET, database);
+            fail("Expected the failed copy to be reported");
+        } catch (IOException e) {
+            assertEquals("apk went away", e.getMessage());
+        }
+
+        assertFalse(database.exists());
+        assertFalse(new File(database.getPath() + ".tmp").exists());
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < content.length) {
+                read += in.read(content, read, content.length - read);
+            }
+            return content;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write(File file, byte[]... parts) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            for (byte[] part : parts) {
+                out.write(part);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
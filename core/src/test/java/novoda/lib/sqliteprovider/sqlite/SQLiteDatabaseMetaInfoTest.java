@@ -0,0 +1,133 @@
+package novoda.lib.sqliteprovider.sqlite;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import novoda.lib.sqliteprovider.RoboRunner;
+import novoda.lib.sqliteprovider.util.UriRoute;
+import novoda.lib.sqliteprovider.util.UriRouteTable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RoboRunner.class)
+public class SQLiteDatabaseMetaInfoTest {
+
+    private static final UriRoute SHOP_FIREWORKS = new UriRouteTable().resolve(Uri.parse("content://test.com/shops/1/fireworks"));
+
+    @Mock
+    private SQLiteOpenHelper helper;
+    @Mock
+    private SQLiteDatabase db;
+    @Mock
+    private Cursor schemaVersion;
+    @Mock
+    private Cursor foreignKeyList;
+    @Mock
+    private Cursor tableInfo;
+    @Mock
+    private Cursor tables;
+
+    private SQLiteDatabaseMetaInfo metaInfo;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        when(helper.getReadableDatabase()).thenReturn(db);
+        when(db.rawQuery("PRAGMA schema_version", null)).thenReturn(schemaVersion);
+        when(db.rawQuery("PRAGMA foreign_key_list('fireworks');", null)).thenReturn(foreignKeyList);
+        when(db.rawQuery("PRAGMA table_info('fireworks');", null)).thenReturn(tableInfo);
+        when(db.query(eq("sqlite_master"), (String[]) anyObject(), anyString(), (String[]) anyObject(), anyString(),
+                anyString(), anyString())).thenReturn(tables);
+        when(foreignKeyList.getColumnIndexOrThrow("id")).thenReturn(0);
+        when(foreignKeyList.getColumnIndexOrThrow("table")).thenReturn(2);
+        when(foreignKeyList.getColumnIndexOrThrow("from")).thenReturn(3);
+        when(foreignKeyList.getColumnIndexOrThrow("to")).thenReturn(4);
+        when(tableInfo.getColumnIndexOrThrow("name")).thenReturn(1);
+        when(tables.moveToNext()).thenReturn(true, true, false);
+        when(tables.getString(0)).thenReturn("shops", "fireworks");
+        metaInfo = new SQLiteDatabaseMetaInfo(helper);
+    }
+
+    @Test
+    public void testParentColumnIsTheDeclaredKeyToTheParentId() {
+        when(foreignKeyList.moveToNext()).thenReturn(true, false);
+        when(foreignKeyList.getInt(0)).thenReturn(0);
+        when(foreignKeyList.getString(2)).thenReturn("shops");
+        when(foreignKeyList.getString(3)).thenReturn("sold_by");
+        when(foreignKeyList.getString(4)).thenReturn("_id");
+
+        assertEquals("sold_by", metaInfo.getParentColumn(SHOP_FIREWORKS));
+    }
+
+    @Test
+    public void testParentColumnFollowsTheSingularNamingConvention() {
+        // before foreign keys were read this was shops_id, a column the table does not have
+        when(tableInfo.moveToNext()).thenReturn(true, true, false);
+        when(tableInfo.getString(1)).thenReturn("_id", "shop_id");
+
+        assertEquals("shop_id", metaInfo.getParentColumn(SHOP_FIREWORKS));
+    }
+
+    @Test
+    public void testParentColumnFallsBackToTheParentTableName() {
+        when(tableInfo.moveToNext()).thenReturn(true, true, false);
+        when(tableInfo.getString(1)).thenReturn("_id", "name");
+
+        assertEquals("shops_id", metaInfo.getParentColumn(SHOP_FIREWORKS));
+    }
+
+    @Test
+    public void testParentColumnIgnoresKeysNotReferencingTheParentId() {
+        when(foreignKeyList.moveToNext()).thenReturn(true, false);
+        when(foreignKeyList.getInt(0)).thenReturn(0);
+        when(foreignKeyList.getString(2)).thenReturn("shops");
+        when(foreignKeyList.getString(3)).thenReturn("shop_code");
+        when(foreignKeyList.getString(4)).thenReturn("code");
+
+        assertEquals("shops_id", metaInfo.getParentColumn(SHOP_FIREWORKS));
+    }
+
+    @Test
+    public void testChecksTheSchemaVersionOncePerCall() {
+        metaInfo.onBeginCall();
+        metaInfo.getTables();
+        metaInfo.getParentColumn(SHOP_FIREWORKS);
+        metaInfo.getColumnNames("fireworks");
+        metaInfo.onEndCall();
+
+        verify(db, times(1)).rawQuery("PRAGMA schema_version", null);
+
+        metaInfo.getTables();
+
+        verify(db, times(2)).rawQuery("PRAGMA schema_version", null);
+    }
+
+    @Test
+    public void testKnowsOnlyTablesAlreadyRead() {
+        assertFalse(metaInfo.isKnownTable("fireworks"));
+        verify(db, never()).rawQuery("PRAGMA schema_version", null);
+
+        metaInfo.getTables();
+
+        assertTrue(metaInfo.isKnownTable("fireworks"));
+        assertFalse(metaInfo.isKnownTable("rockets"));
+        verify(db, times(1)).rawQuery("PRAGMA schema_version", null);
+    }
+}
@@ -0,0 +1,116 @@
+package novoda.lib.sqliteprovider.sqlite;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import novoda.lib.sqliteprovider.RoboRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RoboRunner.class)
+public class WarmUpSQLiteOpenHelperTest {
+
+    @Mock
+    SQLiteOpenHelper delegate;
+    @Mock
+    SQLiteDatabase db;
+
+    private final CountDownLatch warmedUp = new CountDownLatch(1);
+    private WarmUpSQLiteOpenHelper helper;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        when(delegate.getWritableDatabase()).thenReturn(db);
+        helper = new WarmUpSQLiteOpenHelper(null, new WarmUpSQLiteOpenHelper.Factory() {
+            @Override
+            public SQLiteOpenHelper create() {
+                return delegate;
+            }
+        }, new WarmUpSQLiteOpenHelper.WarmUp() {
+            @Override
+            public void onWarmUp(SQLiteDatabase database) {
+                warmedUp.countDown();
+            }
+        });
+    }
+
+    @Test
+    public void testOpensTheDatabaseAndWarmsUpInTheBackground() throws InterruptedException {
+        helper.start();
+
+        assertTrue(warmedUp.await(5, TimeUnit.SECONDS));
+        assertSame(db, helper.getWritableDatabase());
+    }
+
+    @Test
+    public void testOpensOnTheCallingThreadWhenNeverStarted() {
+        assertSame(delegate, helper.getDelegate());
+        assertSame(db, helper.getWritableDatabase());
+    }
+
+    @Test
+    public void testOpensAgainAfterAFailedAttempt() {
+        when(delegate.getWritableDatabase()).thenThrow(new SQLiteException("database is locked")).thenReturn(db);
+
+        try {
+            helper.getWritableDatabase();
+            fail("Expected the failure to open the database");
+        } catch (SQLiteException e) {
+            assertEquals("database is locked", e.getMessage());
+        }
+
+        assertSame(db, helper.getWritableDatabase());
+    }
+
+    @Test
+    public void testHandsAnErrorOfTheBackgroundOpenToWaitingCallers() {
+        when(delegate.getWritableDatabase()).thenThrow(new OutOfMemoryError("no room for the page cache"));
+
+        helper.start();
+        try {
+            helper.getWritableDatabase();
+            fail("Expected the error of the background attempt");
+        } catch (OutOfMemoryError e) {
+            assertEquals("no room for the page cache", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testReportsTheNameOfTheCreatedHelper() {
+        when(delegate.getDatabaseName()).thenReturn("test.db");
+
+        assertEquals("test.db", helper.getDatabaseName());
+    }
+
+    @Test
+    public void testAppliesConnectionSettingsToTheCreatedHelper() {
+        helper.setWriteAheadLoggingEnabled(true);
+
+        verify(delegate).setWriteAheadLoggingEnabled(true);
+    }
+
+    @Test
+    public void testClosingBeforeOpeningOpensNothing() {
+        helper.close();
+
+        verify(delegate, never()).getWritableDatabase();
+        verify(delegate, never()).close();
+    }
+}
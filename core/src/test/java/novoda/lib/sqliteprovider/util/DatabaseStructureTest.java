@@ -0,0 +1,136 @@
+package novoda.lib.sqliteprovider.util;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import novoda.lib.sqliteprovider.RoboRunner;
+import novoda.lib.sqliteprovider.sqlite.DatabaseMetaInfo.SQLiteType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RoboRunner.class)
+public class DatabaseStructureTest {
+
+    @Mock
+    private SQLiteDatabase db;
+    @Mock
+    private Cursor foreignKeyList;
+    @Mock
+    private Cursor tableInfo;
+    @Mock
+    private Cursor tables;
+
+    private DatabaseStructure structure;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        when(db.rawQuery("PRAGMA foreign_key_list('fireworks');", null)).thenReturn(foreignKeyList);
+        when(db.rawQuery("PRAGMA table_info('fireworks');", null)).thenReturn(tableInfo);
+        when(db.query(eq("sqlite_master"), (String[]) anyObject(), anyString(), (String[]) anyObject(), anyString(),
+                anyString(), anyString())).thenReturn(tables);
+        when(foreignKeyList.getColumnIndexOrThrow("id")).thenReturn(0);
+        when(foreignKeyList.getColumnIndexOrThrow("table")).thenReturn(2);
+        when(foreignKeyList.getColumnIndexOrThrow("from")).thenReturn(3);
+        when(foreignKeyList.getColumnIndexOrThrow("to")).thenReturn(4);
+        when(tableInfo.getColumnIndexOrThrow("name")).thenReturn(1);
+        when(tables.moveToNext()).thenReturn(true, true, true, true, false);
+        when(tables.getString(0)).thenReturn("shops", "makers", "stands", "fireworks");
+        structure = new DatabaseStructure(db);
+    }
+
+    @Test
+    public void testReadsColumnTypesByTheirAffinity() {
+        when(tableInfo.getColumnIndexOrThrow("type")).thenReturn(2);
+        when(tableInfo.moveToNext()).thenReturn(true, true, true, true, true, false);
+        when(tableInfo.getString(1)).thenReturn("name", "count", "lit_at", "payload", "price");
+        when(tableInfo.getString(2)).thenReturn("VARCHAR(255)", "BIGINT", "DATETIME", "", "double");
+
+        Map<String, SQLiteType> columns = structure.columnsFor("fireworks");
+
+        assertEquals(SQLiteType.TEXT, columns.get("name"));
+        assertEquals(SQLiteType.INTEGER, columns.get("count"));
+        assertEquals(SQLiteType.NUMERIC, columns.get("lit_at"));
+        assertEquals(SQLiteType.BLOB, columns.get("payload"));
+        assertEquals(SQLiteType.REAL, columns.get("price"));
+    }
+
+    @Test
+    public void testGroupsTheRowsOfEachDeclaredKey() {
+        when(foreignKeyList.moveToNext()).thenReturn(true, true, true, false);
+        when(foreignKeyList.getInt(0)).thenReturn(0, 1, 1);
+        when(foreignKeyList.getString(2)).thenReturn("shops", "makers");
+        when(foreignKeyList.getString(3)).thenReturn("shop_id", "maker_code", "maker_country");
+        when(foreignKeyList.getString(4)).thenReturn(null, "code", "country");
+
+        List<ForeignKey> foreignKeys = structure.foreignKeysFor("fireworks");
+
+        assertEquals(Arrays.asList(
+                new ForeignKey("fireworks", Collections.singletonList("shop_id"), "shops", Collections.singletonList("_id"), true),
+                new ForeignKey("fireworks", Arrays.asList("maker_code", "maker_country"), "makers", Arrays.asList("code", "country"), true)
+        ), foreignKeys);
+        assertTrue(foreignKeys.get(0).isDeclared());
+        assertTrue(foreignKeys.get(0).referencesId());
+        assertFalse(foreignKeys.get(1).referencesId());
+    }
+
+    @Test
+    public void testGuessesKeysFromColumnNamesNoDeclaredKeyCovers() {
+        when(foreignKeyList.moveToNext()).thenReturn(true, false);
+        when(foreignKeyList.getInt(0)).thenReturn(0);
+        when(foreignKeyList.getString(2)).thenReturn("shops");
+        when(foreignKeyList.getString(3)).thenReturn("shop_id");
+        when(foreignKeyList.getString(4)).thenReturn("_id");
+        when(tableInfo.moveToNext()).thenReturn(true, true, true, false);
+        when(tableInfo.getString(1)).thenReturn("_id", "shop_id", "stand_id");
+
+        List<ForeignKey> foreignKeys = structure.foreignKeysFor("fireworks");
+
+        assertEquals(2, foreignKeys.size());
+        assertTrue(foreignKeys.get(0).isDeclared());
+        assertEquals(ForeignKey.byConvention("fireworks", "stand_id", "stands"), foreignKeys.get(1));
+        assertFalse(foreignKeys.get(1).isDeclared());
+    }
+
+    @Test
+    public void testFallsBackToTheNamingConventionWithoutDeclaredKeys() {
+        when(tableInfo.moveToNext()).thenReturn(true, true, true, false);
+        when(tableInfo.getString(1)).thenReturn("_id", "shop_id", "maker_id");
+
+        List<ForeignKey> foreignKeys = structure.foreignKeysFor("fireworks");
+
+        assertEquals(Arrays.asList(
+                ForeignKey.byConvention("fireworks", "shop_id", "shops"),
+                ForeignKey.byConvention("fireworks", "maker_id", "makers")
+        ), foreignKeys);
+    }
+
+    @Test
+    public void testOnlyListsTablesWhenAColumnLooksLikeAKey() {
+        when(tableInfo.moveToNext()).thenReturn(true, true, false);
+        when(tableInfo.getString(1)).thenReturn("_id", "name");
+
+        assertTrue(structure.foreignKeysFor("fireworks").isEmpty());
+        verify(db, never()).query(anyString(), (String[]) anyObject(), anyString(), (String[]) anyObject(), anyString(),
+                anyString(), anyString());
+    }
+}
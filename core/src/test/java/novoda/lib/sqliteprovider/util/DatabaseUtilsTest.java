@@ -0,0 +1,147 @@
+package novoda.lib.sqliteprovider.util;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import novoda.lib.sqliteprovider.RoboRunner;
+import novoda.rest.database.SQLiteConflictClause;
+import novoda.rest.database.SQLiteIndex;
+import novoda.rest.database.SQLiteIndexedTableCreator;
+import novoda.rest.database.SQLiteRelationalTableCreator;
+import novoda.rest.database.SQLiteRelationship;
+import novoda.rest.database.SQLiteType;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RoboRunner.class)
+public class DatabaseUtilsTest {
+
+    @Test
+    public void testCreatesTheParentColumnOfAOneToManyTable() {
+        assertEquals("CREATE TABLE IF NOT EXISTS \"fireworks\" (_id INTEGER PRIMARY KEY AUTOINCREMENT , name TEXT, code TEXT UNIQUE, shop_id INTEGER);",
+                DatabaseUtils.getCreateStatement(new FireworksCreator()));
+    }
+
+    @Test
+    public void testIndexesFlaggedFieldsTheParentColumnAndDeclaredIndexes() {
+        assertEquals(Arrays.asList(
+                "CREATE INDEX IF NOT EXISTS \"9fireworks_4name_idx\" ON \"fireworks\" (\"name\");",
+                "CREATE INDEX IF NOT EXISTS \"9fireworks_7shop_id_idx\" ON \"fireworks\" (\"shop_id\");",
+                "CREATE UNIQUE INDEX IF NOT EXISTS \"9fireworks_7shop_id_4name_unique\" ON \"fireworks\" (\"shop_id\", \"name\");"),
+                DatabaseUtils.getIndexStatements(new FireworksCreator()));
+    }
+
+    @Test
+    public void testNamesIndexesSoThatTablesAndColumnsCanNotCollide() {
+        assertEquals("CREATE INDEX IF NOT EXISTS \"3a_b_1c_idx\" ON \"a_b\" (\"c\");",
+                DatabaseUtils.getIndexStatement("a_b", new SQLiteIndex("c")));
+        assertEquals("CREATE INDEX IF NOT EXISTS \"1a_3b_c_idx\" ON \"a\" (\"b_c\");",
+                DatabaseUtils.getIndexStatement("a", new SQLiteIndex("b_c")));
+    }
+
+    @Test
+    public void testQuotesTheNamesOfIndexedColumns() {
+        assertEquals("CREATE UNIQUE INDEX IF NOT EXISTS \"9fireworks_5order_3a\"\"b_unique\" ON \"fireworks\" (\"order\", \"a\"\"b\");",
+                DatabaseUtils.getIndexStatement("fireworks", new SQLiteIndex(true, "order", "a\"b")));
+    }
+
+    @Test
+    public void testDeclaresACascadingForeignKeyInForeignKeyMode() {
+        assertEquals("CREATE TABLE IF NOT EXISTS \"fireworks\" (_id INTEGER PRIMARY KEY AUTOINCREMENT , name TEXT, code TEXT UNIQUE, shop_id INTEGER, "
+                        + "FOREIGN KEY(\"shop_id\") REFERENCES \"shop\"(\"_id\") ON DELETE CASCADE);",
+                DatabaseUtils.getCreateStatement(new CascadingFireworksCreator()));
+    }
+
+    private static class CascadingFireworksCreator extends FireworksCreator implements SQLiteRelationalTableCreator {
+
+        @Override
+        public SQLiteRelationship getRelationship() {
+            return SQLiteRelationship.FOREIGN_KEY;
+        }
+    }
+
+    private static class FireworksCreator implements SQLiteIndexedTableCreator {
+
+        @Override
+        public String getPrimaryKey() {
+            return null;
+        }
+
+        @Override
+        public boolean shouldPKAutoIncrement() {
+            return true;
+        }
+
+        @Override
+        public SQLiteType getType(String field) {
+            return SQLiteType.TEXT;
+        }
+
+        @Override
+        public boolean isNullAllowed(String field) {
+            return true;
+        }
+
+        @Override
+        public boolean isUnique(String field) {
+            return "code".equals(field);
+        }
+
+        @Override
+        public boolean isOneToMany() {
+            return true;
+        }
+
+        @Override
+        public String getParentColumnName() {
+            return "shop_id";
+        }
+
+        @Override
+        public SQLiteType getParentType() {
+            return SQLiteType.INTEGER;
+        }
+
+        @Override
+        public String getParentTableName() {
+            return "shop";
+        }
+
+        @Override
+        public String getParentPrimaryKey() {
+            return "_id";
+        }
+
+        @Override
+        public boolean shouldIndex(String field) {
+            return true;
+        }
+
+        @Override
+        public SQLiteConflictClause onConflict(String field) {
+            return null;
+        }
+
+        @Override
+        public String getTableName() {
+            return "fireworks";
+        }
+
+        @Override
+        public String[] getTableFields() {
+            return new String[]{"_id", "name", "code"};
+        }
+
+        @Override
+        public String[] getTriggers() {
+            return new String[]{};
+        }
+
+        @Override
+        public SQLiteIndex[] getIndexes() {
+            return new SQLiteIndex[]{new SQLiteIndex(true, "shop_id", "name")};
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package novoda.lib.sqliteprovider.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SQLStatementReaderTest {
+
+    @Test
+    public void testHandsOutStatementsOneAtATime() throws IOException {
+        SQLStatementReader reader = new SQLStatementReader(new StringReader(
+                "CREATE TABLE t(_id INTEGER);\n-- seed\nINSERT INTO t\nVALUES(1);\n/* skipped\nINSERT INTO t VALUES(2);\n*/\n"));
+
+        assertEquals("CREATE TABLE t(_id INTEGER);", reader.nextStatement());
+        assertEquals("INSERT INTO t VALUES(1);", reader.nextStatement());
+        assertNull(reader.nextStatement());
+    }
+
+    @Test
+    public void testReturnsCompleteStatementsBeforeReportingAnIncompleteOne() throws IOException {
+        SQLStatementReader reader = new SQLStatementReader(new StringReader("INSERT INTO t VALUES(1);\nINSERT INTO t VALUES(2)"));
+
+        assertEquals("INSERT INTO t VALUES(1);", reader.nextStatement());
+        try {
+            reader.nextStatement();
+        } catch (IOException expected) {
+            return;
+        }
+        throw new AssertionError("incomplete statement not reported");
+    }
+
+    @Test
+    public void testIgnoresCommentMarkersAndSemicolonsInsideLiterals() throws IOException {
+        SQLStatementReader reader = new SQLStatementReader(new StringReader(
+                "INSERT INTO t VALUES('a -- b; c', 'it''s');\nSELECT [a;b] FROM t;"));
+
+        assertEquals("INSERT INTO t VALUES('a -- b; c', 'it''s');", reader.nextStatement());
+        assertEquals("SELECT [a;b] FROM t;", reader.nextStatement());
+        assertNull(reader.nextStatement());
+    }
+
+    @Test
+    public void testSplitsStatementsSharingALine() throws IOException {
+        SQLStatementReader reader = new SQLStatementReader(new StringReader("SELECT 1; SELECT 4/2;/* done */"));
+
+        assertEquals("SELECT 1;", reader.nextStatement());
+        assertEquals("SELECT 4/2;", reader.nextStatement());
+        assertNull(reader.nextStatement());
+    }
+
+    @Test
+    public void testKeepsTheBodyOfATriggerInOneStatement() throws IOException {
+        SQLStatementReader reader = new SQLStatementReader(new StringReader(
+                "CREATE TRIGGER tr AFTER INSERT ON t BEGIN\n"
+                        + "  UPDATE t SET x = CASE WHEN 1 THEN 2 END;\n"
+                        + "  DELETE FROM u;\n"
+                        + "END;\n"
+                        + "SELECT 3;"));
+
+        assertEquals("CREATE TRIGGER tr AFTER INSERT ON t BEGIN UPDATE t SET x = CASE WHEN 1 THEN 2 END; DELETE FROM u; END;",
+                reader.nextStatement());
+        assertEquals("SELECT 3;", reader.nextStatement());
+        assertNull(reader.nextStatement());
+    }
+}
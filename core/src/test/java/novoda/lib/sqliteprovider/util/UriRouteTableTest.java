@@ -0,0 +1,149 @@
+package novoda.lib.sqliteprovider.util;
+
+import android.net.Uri;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import novoda.lib.sqliteprovider.RoboRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RoboRunner.class)
+public class UriRouteTableTest {
+
+    private static final List<String> TABLES = Arrays.asList("parent", "child", "subchild", "shop", "firework", "review");
+
+    private final UriRouteTable routes = new UriRouteTable(new UriRouteTable.KnownTables() {
+        @Override
+        public boolean isKnownTable(String table) {
+            return TABLES.contains(table);
+        }
+    });
+
+    @Test
+    public void testDirectoryRoute() {
+        UriRoute route = routes.resolve(Uri.parse("content://test.com/parent"));
+
+        assertEquals("parent", route.getTable());
+        assertFalse(route.isItem());
+        assertFalse(route.hasParent());
+        assertEquals(UriRoute.NO_ID, route.getItemId());
+    }
+
+    @Test
+    public void testItemRoute() {
+        UriRoute route = routes.resolve(Uri.parse("content://test.com/parent/12"));
+
+        assertEquals("parent", route.getTable());
+        assertTrue(route.isItem());
+        assertEquals("12", route.getId());
+        assertEquals(12L, route.getItemId());
+    }
+
+    @Test
+    public void testChildrenRoute() {
+        UriRoute route = routes.resolve(Uri.parse("content://test.com/parent/1/child"));
+
+        assertEquals("child", route.getTable());
+        assertFalse(route.isItem());
+        assertEquals("parent", route.getParentTable());
+        assertEquals("parent_id", route.getParentColumn());
+        assertEquals("1", route.getParentId());
+        assertEquals(1L, route.getParentItemId());
+    }
+
+    @Test
+    public void testDeepItemRouteUsesClosestParent() {
+        UriRoute route = routes.resolve(Uri.parse("content://test.com/parent/1/child/6/subchild/3"));
+
+        assertEquals("subchild", route.getTable());
+        assertEquals(3L, route.getItemId());
+        assertEquals("child", route.getParentTable());
+        assertEquals(6L, route.getParentItemId());
+    }
+
+    @Test
+    public void testSameShapeResolvesToSameTables() {
+        UriRoute first = routes.resolve(Uri.parse("content://test.com/parent/1/child"));
+        UriRoute second = routes.resolve(Uri.parse("content://test.com/parent/2/child/3"));
+
+        assertTrue(first.getParentColumn() == second.getParentColumn());
+    }
+
+    @Test
+    public void testKeepsOnlyKnownTables() {
+        routes.resolve(Uri.parse("content://test.com/parent/1/child"));
+        routes.resolve(Uri.parse("content://test.com/parent/1/made_up/2/child"));
+        routes.resolve(Uri.parse("content://test.com/made_up"));
+
+        assertEquals(2, routes.size());
+    }
+
+    @Test
+    public void testResolvesUnknownTablesWithoutKeepingThem() {
+        UriRouteTable uncached = new UriRouteTable();
+
+        UriRoute route = uncached.resolve(Uri.parse("content://test.com/parent/1/made_up/2/child"));
+
+        assertEquals("child", route.getTable());
+        assertEquals("made_up", route.getParentTable());
+        assertEquals("made_up_id", route.getParentColumn());
+        assertEquals(0, uncached.size());
+    }
+
+    @Test
+    public void testParsesSixtyFourBitIds() {
+        UriRoute route = routes.resolve(Uri.parse("content://test.com/parent/9223372036854775807"));
+
+        assertEquals(Long.MAX_VALUE, route.getItemId());
+    }
+
+    @Test
+    public void testNumericChecks() {
+        assertTrue(UriRoute.isNumeric("0"));
+        assertTrue(UriRoute.isNumeric("-9223372036854775808"));
+        assertFalse(UriRoute.isNumeric("9223372036854775808"));
+        assertFalse(UriRoute.isNumeric("12a"));
+        assertFalse(UriRoute.isNumeric("-"));
+        assertFalse(UriRoute.isNumeric(""));
+        assertFalse(UriRoute.isNumeric(null));
+        assertEquals(Long.MIN_VALUE, UriRoute.parseId("-9223372036854775808"));
+    }
+
+    @Test
+    public void testNonNumericIdIsKeptRaw() {
+        UriRoute route = routes.resolve(Uri.parse("content://test.com/parent/abc"));
+
+        assertEquals("abc", route.getId());
+        assertEquals(UriRoute.NO_ID, route.getItemId());
+        assertNull(route.getParentTable());
+    }
+
+    @Test
+    public void testPathIdsHoldEveryTableIdPair() {
+        PathIds pathIds = routes.resolve(Uri.parse("content://test.com/shop/1/firework/6/review")).getPathIds();
+
+        assertEquals(2, pathIds.size());
+        assertEquals("shop", pathIds.tableAt(0));
+        assertEquals(1L, pathIds.itemIdAt(0));
+        assertEquals("firework", pathIds.tableAt(1));
+        assertEquals("6", pathIds.idFor("firework"));
+        assertNull(pathIds.idFor("review"));
+    }
+
+    @Test
+    public void testPathIdsAreIndependentPerUri() {
+        PathIds first = routes.resolve(Uri.parse("content://test.com/shop/1")).getPathIds();
+        routes.resolve(Uri.parse("content://test.com/firework/2")).getPathIds();
+
+        assertEquals(1, first.size());
+        assertNull(first.idFor("firework"));
+    }
+}
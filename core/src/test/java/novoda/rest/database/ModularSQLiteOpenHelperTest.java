@@ -0,0 +1,346 @@
+package novoda.rest.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import novoda.lib.sqliteprovider.RoboRunner;
+import novoda.lib.sqliteprovider.util.DatabaseUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RoboRunner.class)
+public class ModularSQLiteOpenHelperTest {
+
+    private static final String TABLE_INFO = "PRAGMA table_info('fireworks')";
+    private static final String FIREWORKS_TRIGGER = "CREATE TRIGGER IF NOT EXISTS fireworks_delete AFTER DELETE ON shops "
+            + "BEGIN DELETE FROM fireworks WHERE shops_id = old._id; END;";
+
+    @Mock
+    private Context context;
+    @Mock
+    private SQLiteDatabase db;
+    @Mock
+    private Cursor tables;
+
+    private ModularSQLiteOpenHelper helper;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        ApplicationInfo applicationInfo = new ApplicationInfo();
+        applicationInfo.packageName = "novoda.test";
+        when(context.getApplicationInfo()).thenReturn(applicationInfo);
+        when(db.rawQuery("SELECT name FROM sqlite_master WHERE type='table';", null)).thenReturn(tables);
+        helper = newHelper();
+    }
+
+    private ModularSQLiteOpenHelper newHelper() {
+        return new ModularSQLiteOpenHelper(context) {
+            @Override
+            public SQLiteDatabase getReadableDatabase() {
+                return db;
+            }
+
+            @Override
+            public SQLiteDatabase getWritableDatabase() {
+                return db;
+            }
+        };
+    }
+
+    @Test
+    public void testQuotesTheNamesOfAddedColumns() {
+        assertEquals("ALTER TABLE \"fireworks\" ADD COLUMN \"price\" REAL",
+                ModularSQLiteOpenHelper.addColumnStatement("fireworks", "price", SQLiteType.REAL));
+        assertEquals("ALTER TABLE \"fire\"\"works\" ADD COLUMN \"x\"\" TEXT); DROP TABLE shops; --\" TEXT",
+                ModularSQLiteOpenHelper.addColumnStatement("fire\"works", "x\" TEXT); DROP TABLE shops; --", SQLiteType.TEXT));
+    }
+
+    @Test
+    public void testWidensTheTableWithTheMissingColumns() {
+        when(db.rawQuery(TABLE_INFO, null)).thenReturn(tableInfo("_id", "name"));
+        ContentValues values = new ContentValues();
+        values.put("name", "rocket");
+        values.put("price", 2.5);
+        values.put("stock", 10);
+        when(db.insertOrThrow("fireworks", null, values)).thenReturn(7L);
+
+        assertEquals(7L, helper.insert("fireworks", values));
+
+        verify(db).execSQL("ALTER TABLE \"fireworks\" ADD COLUMN \"price\" REAL");
+        verify(db).execSQL("ALTER TABLE \"fireworks\" ADD COLUMN \"stock\" INTEGER");
+        verify(db).setTransactionSuccessful();
+    }
+
+    @Test
+    public void testInsertsKnownColumnsStraightAway() {
+        when(db.rawQuery(TABLE_INFO, null)).thenReturn(tableInfo("_id", "name"));
+        ContentValues values = new ContentValues();
+        values.put("NAME", "rocket");
+        when(db.insertOrThrow("fireworks", null, values)).thenReturn(7L);
+
+        assertEquals(7L, helper.insert("fireworks", values));
+        assertEquals(7L, helper.insert("fireworks", values));
+
+        verify(db, never()).execSQL(anyString());
+        verify(db, times(1)).rawQuery(TABLE_INFO, null);
+    }
+
+    @Test
+    public void testRetriesOnceTheColumnsChangedBehindTheCache() {
+        when(db.rawQuery(TABLE_INFO, null)).thenReturn(tableInfo("_id", "name", "price"), tableInfo("_id", "name"));
+        ContentValues values = new ContentValues();
+        values.put("price", 2.5);
+        when(db.insertOrThrow("fireworks", null, values))
+                .thenThrow(new SQLiteException("table fireworks has no column named price (code 1)"))
+                .thenReturn(7L);
+
+        assertEquals(7L, helper.insert("fireworks", values));
+
+        verify(db, times(2)).rawQuery(TABLE_INFO, null);
+        verify(db).execSQL("ALTER TABLE \"fireworks\" ADD COLUMN \"price\" REAL");
+        verify(db, times(2)).insertOrThrow("fireworks", null, values);
+    }
+
+    @Test
+    public void testKeepsTheCachedColumnsOnOtherFailures() {
+        when(db.rawQuery(TABLE_INFO, null)).thenReturn(tableInfo("_id", "name"));
+        ContentValues values = new ContentValues();
+        values.put("name", "rocket");
+        SQLiteConstraintException unique = new SQLiteConstraintException("UNIQUE constraint failed: fireworks.name");
+        when(db.insertOrThrow("fireworks", null, values)).thenThrow(unique);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                helper.insert("fireworks", values);
+                fail("Expected the constraint violation to be rethrown");
+            } catch (SQLiteConstraintException e) {
+                assertEquals(unique, e);
+            }
+        }
+
+        verify(db, times(1)).rawQuery(TABLE_INFO, null);
+        verify(db, never()).execSQL(anyString());
+    }
+
+    @Test
+    public void testCreatesEveryTableInOneTransactionAndOneVersionBump() {
+        TableCreator shops = new TableCreator("shops", null);
+        TableCreator fireworks = new TableCreator("fireworks", "shops", FIREWORKS_TRIGGER);
+        TableCreator stands = new TableCreator("stands", "shops");
+
+        helper.createTables(Arrays.asList(shops, fireworks, stands));
+
+        for (TableCreator creator : Arrays.asList(shops, fireworks, stands)) {
+            verify(db).execSQL(DatabaseUtils.getCreateStatement(creator));
+            for (String index : DatabaseUtils.getIndexStatements(creator)) {
+                verify(db).execSQL(index);
+            }
+            assertTrue(helper.isTableCreated(creator.getTableName()));
+        }
+        verify(db).execSQL(FIREWORKS_TRIGGER);
+        verify(db, times(1)).needUpgrade(anyInt());
+        verify(db, times(1)).beginTransaction();
+        verify(db, times(1)).setTransactionSuccessful();
+        verify(db, times(1)).endTransaction();
+    }
+
+    @Test
+    public void testSkipsTablesAlreadyInTheDatabase() {
+        when(tables.moveToNext()).thenReturn(true, false);
+        when(tables.getString(0)).thenReturn("shops");
+        helper = newHelper();
+        TableCreator shops = new TableCreator("shops", null);
+        TableCreator fireworks = new TableCreator("fireworks", "shops");
+
+        helper.createTables(Arrays.asList(shops, fireworks));
+
+        verify(db, never()).execSQL(DatabaseUtils.getCreateStatement(shops));
+        verify(db).execSQL(DatabaseUtils.getCreateStatement(fireworks));
+    }
+
+    @Test
+    public void testLeavesTheDatabaseAloneWhenEveryTableExists() {
+        when(tables.moveToNext()).thenReturn(true, true, false);
+        when(tables.getString(0)).thenReturn("shops", "fireworks");
+        helper = newHelper();
+
+        helper.createTables(Arrays.asList(new TableCreator("shops", null), new TableCreator("fireworks", "shops")));
+
+        verify(db, never()).needUpgrade(anyInt());
+        verify(db, never()).beginTransaction();
+        verify(db, never()).execSQL(anyString());
+    }
+
+    @Test
+    public void testRegistersTheTablesOnlyOnceCommitted() {
+        TableCreator shops = new TableCreator("shops", null);
+        TableCreator fireworks = new TableCreator("fireworks", "shops");
+        SQLiteException full = new SQLiteException("database or disk is full (code 13)");
+        doThrow(full).doNothing().when(db).endTransaction();
+
+        try {
+            helper.createTables(Arrays.asList(shops, fireworks));
+            fail("Expected the failure to commit the tables");
+        } catch (SQLiteException e) {
+            assertEquals(full, e);
+        }
+
+        assertFalse(helper.isTableCreated("shops"));
+        assertFalse(helper.isTableCreated("fireworks"));
+
+        helper.createTables(Arrays.asList(shops, fireworks));
+
+        verify(db, times(2)).execSQL(DatabaseUtils.getCreateStatement(shops));
+        verify(db, times(2)).execSQL(DatabaseUtils.getCreateStatement(fireworks));
+        assertTrue(helper.isTableCreated("shops"));
+        assertTrue(helper.isTableCreated("fireworks"));
+    }
+
+    @Test
+    public void testRegistersNoTableWhenAStatementFails() {
+        TableCreator shops = new TableCreator("shops", null);
+        TableCreator fireworks = new TableCreator("fireworks", "shops");
+        SQLiteException syntax = new SQLiteException("near \"(\": syntax error (code 1)");
+        doThrow(syntax).when(db).execSQL(DatabaseUtils.getCreateStatement(fireworks));
+
+        try {
+            helper.createTables(Arrays.asList(shops, fireworks));
+            fail("Expected the failure to create the tables");
+        } catch (SQLiteException e) {
+            assertEquals(syntax, e);
+        }
+
+        verify(db, never()).setTransactionSuccessful();
+        verify(db).endTransaction();
+        assertFalse(helper.isTableCreated("shops"));
+        assertFalse(helper.isTableCreated("fireworks"));
+    }
+
+    private static Cursor tableInfo(String... columns) {
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.getColumnIndexOrThrow("name")).thenReturn(1);
+        when(cursor.getColumnIndexOrThrow("type")).thenReturn(2);
+        Boolean[] moves = new Boolean[columns.length];
+        Arrays.fill(moves, Boolean.TRUE);
+        if (columns.length > 0) {
+            moves[columns.length - 1] = Boolean.FALSE;
+            when(cursor.getString(1)).thenReturn(columns[0], Arrays.copyOfRange(columns, 1, columns.length));
+        }
+        when(cursor.moveToNext()).thenReturn(columns.length > 0, moves);
+        when(cursor.getString(2)).thenReturn("TEXT");
+        return cursor;
+    }
+
+    private static class TableCreator implements SQLiteTableCreator {
+
+        private final String table;
+        private final String parent;
+        private final String[] triggers;
+
+        TableCreator(String table, String parent, String... triggers) {
+            this.table = table;
+            this.parent = parent;
+            this.triggers = triggers;
+        }
+
+        @Override
+        public String getPrimaryKey() {
+            return null;
+        }
+
+        @Override
+        public boolean shouldPKAutoIncrement() {
+            return true;
+        }
+
+        @Override
+        public SQLiteType getType(String field) {
+            return SQLiteType.TEXT;
+        }
+
+        @Override
+        public boolean isNullAllowed(String field) {
+            return true;
+        }
+
+        @Override
+        public boolean isUnique(String field) {
+            return false;
+        }
+
+        @Override
+        public boolean isOneToMany() {
+            return parent != null;
+        }
+
+        @Override
+        public String getParentColumnName() {
+            return parent + "_id";
+        }
+
+        @Override
+        public SQLiteType getParentType() {
+            return SQLiteType.INTEGER;
+        }
+
+        @Override
+        public String getParentTableName() {
+            return parent;
+        }
+
+        @Override
+        public String getParentPrimaryKey() {
+            return "_id";
+        }
+
+        @Override
+        public boolean shouldIndex(String field) {
+            return true;
+        }
+
+        @Override
+        public SQLiteConflictClause onConflict(String field) {
+            return null;
+        }
+
+        @Override
+        public String getTableName() {
+            return table;
+        }
+
+        @Override
+        public String[] getTableFields() {
+            return new String[]{"name"};
+        }
+
+        @Override
+        public String[] getTriggers() {
+            return triggers;
+        }
+    }
+}
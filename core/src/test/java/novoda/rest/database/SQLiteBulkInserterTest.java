@@ -0,0 +1,272 @@
+package novoda.rest.database;
+
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import novoda.lib.sqliteprovider.RoboRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RoboRunner.class)
+public class SQLiteBulkInserterTest {
+
+    private static final String INSERT_NAME_AND_PRICE = "INSERT INTO \"fireworks\" (\"name\", \"price\") VALUES (?, ?);";
+
+    @Mock
+    private SQLiteDatabase db;
+    @Mock
+    private SQLiteStatement statement;
+
+    private SQLiteBulkInserter bulkInserter;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        when(db.compileStatement(anyString())).thenReturn(statement);
+        when(statement.executeInsert()).thenReturn(1L);
+        bulkInserter = new SQLiteBulkInserter(db);
+    }
+
+    @Test
+    public void testPlacesEachColumnAtItsInsertIndex() {
+        SQLiteInserter inserter = new FireworksInserter("price", "name");
+
+        assertEquals(INSERT_NAME_AND_PRICE, SQLiteBulkInserter.insertStatement("fireworks", inserter));
+    }
+
+    @Test
+    public void testBindsEachValueAsItsDeclaredType() {
+        byte[] picture = {1, 2};
+        FireworksInserter inserter = new FireworksInserter("name", "price", "stock", "picture")
+                .withRow("rocket", 2.5, 10, picture)
+                .withRow(null, "free", "many", "none");
+
+        assertEquals(2, bulkInserter.insert("fireworks", inserter));
+
+        verify(statement).bindString(1, "rocket");
+        verify(statement).bindDouble(2, 2.5);
+        verify(statement).bindLong(3, 10L);
+        verify(statement).bindBlob(4, picture);
+        verify(statement).bindNull(1);
+        verify(statement).bindString(2, "free");
+        verify(statement).bindString(3, "many");
+        verify(statement).bindString(4, "none");
+        verify(statement, times(2)).clearBindings();
+    }
+
+    @Test
+    public void testBindsBlobsAndBooleansWhateverTheDeclaredType() {
+        byte[] picture = {1, 2};
+        FireworksInserter inserter = new FireworksInserter("name", "price", "stock", "picture")
+                .withRow(picture, true, false, Boolean.TRUE);
+
+        bulkInserter.insert("fireworks", inserter);
+
+        verify(statement).bindBlob(1, picture);
+        verify(statement).bindLong(2, 1L);
+        verify(statement).bindLong(3, 0L);
+        verify(statement).bindLong(4, 1L);
+        verify(statement, never()).bindString(anyInt(), anyString());
+    }
+
+    @Test
+    public void testBindsNumbersOfTextColumnsAsNumbers() {
+        FireworksInserter inserter = new FireworksInserter("name", "price").withRow(7, 3);
+
+        bulkInserter.insert("fireworks", inserter);
+
+        verify(statement).bindLong(1, 7L);
+        verify(statement).bindDouble(2, 3.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsValuesThatAreNeitherTextNumbersNorBlobs() {
+        bulkInserter.insert("fireworks", new FireworksInserter("name").withRow(new Object()));
+    }
+
+    @Test
+    public void testQuotesTheNamesOfTheTableAndColumns() {
+        SQLiteInserter inserter = new FireworksInserter("name") {
+            @Override
+            public String[] getColumns() {
+                return new String[]{"na\"me"};
+            }
+
+            @Override
+            public int getInsertIndex(String field) {
+                return 1;
+            }
+        };
+
+        assertEquals("INSERT INTO \"fire works\" (\"na\"\"me\") VALUES (?);",
+                SQLiteBulkInserter.insertStatement("fire works", inserter));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsAnInsertIndexAboveTheColumnCount() {
+        SQLiteBulkInserter.insertStatement("fireworks", withInsertIndices(1, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsAnInsertIndexUsedTwice() {
+        SQLiteBulkInserter.insertStatement("fireworks", withInsertIndices(1, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsAnInsertIndexBelowOne() {
+        SQLiteBulkInserter.insertStatement("fireworks", withInsertIndices(0, 1));
+    }
+
+    @Test
+    public void testCompilesOneStatementPerDistinctInsert() {
+        bulkInserter.insert("fireworks", new FireworksInserter("name", "price").withRow("rocket", 1));
+        bulkInserter.insert("fireworks", new FireworksInserter("price", "name").withRow(2, "fountain"));
+        bulkInserter.insert("fireworks", new FireworksInserter("name").withRow("sparkler"));
+
+        verify(db, times(1)).compileStatement(INSERT_NAME_AND_PRICE);
+        verify(db, times(1)).compileStatement("INSERT INTO \"fireworks\" (\"name\") VALUES (?);");
+    }
+
+    @Test
+    public void testSkipsFailedRowsOnContinue() {
+        when(statement.executeInsert()).thenReturn(1L, -1L, 3L);
+        FireworksInserter inserter = threeRows(SQLiteInserter.CONTINUE);
+
+        assertEquals(2, bulkInserter.insert("fireworks", inserter));
+
+        verify(statement, times(3)).executeInsert();
+        verify(db).setTransactionSuccessful();
+        verify(db).endTransaction();
+    }
+
+    @Test
+    public void testKeepsTheRowsInsertedSoFarOnBreak() {
+        when(statement.executeInsert()).thenReturn(1L).thenThrow(new SQLiteConstraintException("UNIQUE constraint failed"));
+        FireworksInserter inserter = threeRows(SQLiteInserter.BREAK);
+
+        assertEquals(1, bulkInserter.insert("fireworks", inserter));
+
+        verify(statement, times(2)).executeInsert();
+        verify(db).setTransactionSuccessful();
+        verify(db).endTransaction();
+    }
+
+    @Test
+    public void testUndoesTheWholeCallOnRollback() {
+        when(statement.executeInsert()).thenReturn(1L, -1L, 3L);
+        FireworksInserter inserter = threeRows(SQLiteInserter.ROLLBACK);
+
+        assertEquals(0, bulkInserter.insert("fireworks", inserter));
+
+        verify(statement, times(2)).executeInsert();
+        verify(db, never()).setTransactionSuccessful();
+        verify(db).endTransaction();
+    }
+
+    @Test
+    public void testReleaseClosesTheCompiledStatements() {
+        bulkInserter.insert("fireworks", new FireworksInserter("name").withRow("rocket"));
+
+        bulkInserter.release();
+
+        verify(statement).close();
+    }
+
+    private static SQLiteInserter withInsertIndices(final int name, final int price) {
+        return new FireworksInserter("name", "price") {
+            @Override
+            public int getInsertIndex(String field) {
+                return "name".equals(field) ? name : price;
+            }
+        };
+    }
+
+    private static FireworksInserter threeRows(short onFailure) {
+        return new FireworksInserter("name").withRow("rocket").withRow("fountain").withRow("sparkler").onFailure(onFailure);
+    }
+
+    private static class FireworksInserter implements SQLiteInserter {
+
+        private static final String[] ORDER = {"name", "price", "stock", "picture"};
+        private static final SQLiteType[] TYPES = {SQLiteType.TEXT, SQLiteType.REAL, SQLiteType.INTEGER, SQLiteType.BLOB};
+
+        private final String[] columns;
+        private final List<Object[]> rows = new ArrayList<Object[]>();
+        private short onFailure = CONTINUE;
+
+        FireworksInserter(String... columns) {
+            this.columns = columns;
+        }
+
+        FireworksInserter withRow(Object... values) {
+            rows.add(values);
+            return this;
+        }
+
+        FireworksInserter onFailure(short onFailure) {
+            this.onFailure = onFailure;
+            return this;
+        }
+
+        @Override
+        public int getCount() {
+            return rows.size();
+        }
+
+        @Override
+        public String getInsertStatement(String tableName) {
+            return null;
+        }
+
+        @Override
+        public int getInsertIndex(String field) {
+            int index = 1;
+            for (String name : ORDER) {
+                if (name.equals(field)) {
+                    return index;
+                }
+                if (Arrays.asList(columns).contains(name)) {
+                    index++;
+                }
+            }
+            throw new IllegalArgumentException(field);
+        }
+
+        @Override
+        public SQLiteType getType(String field) {
+            return TYPES[Arrays.asList(ORDER).indexOf(field)];
+        }
+
+        @Override
+        public Object get(String field, int index) {
+            return rows.get(index)[Arrays.asList(columns).indexOf(field)];
+        }
+
+        @Override
+        public String[] getColumns() {
+            return columns;
+        }
+
+        @Override
+        public short onFailure(int index) {
+            return onFailure;
+        }
+    }
+}
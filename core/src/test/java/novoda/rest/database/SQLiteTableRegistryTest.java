@@ -0,0 +1,75 @@
+package novoda.rest.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import novoda.lib.sqliteprovider.RoboRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
+
+@RunWith(RoboRunner.class)
+public class SQLiteTableRegistryTest {
+
+    @Mock
+    SQLiteDatabase db;
+    @Mock
+    Cursor tableInfo;
+
+    private SQLiteTableRegistry registry;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        when(db.rawQuery(anyString(), (String[]) anyObject())).thenReturn(tableInfo);
+        when(tableInfo.getColumnIndexOrThrow("name")).thenReturn(1);
+        when(tableInfo.getColumnIndexOrThrow("type")).thenReturn(2);
+        when(tableInfo.moveToNext()).thenReturn(true, false);
+        when(tableInfo.getString(1)).thenReturn("Name");
+        when(tableInfo.getString(2)).thenReturn("VARCHAR(64)");
+        registry = new SQLiteTableRegistry();
+    }
+
+    @Test
+    public void testMapsDeclaredTypesAfterTheirAffinity() {
+        assertEquals(SQLiteType.INTEGER, SQLiteTableRegistry.typeOf("BIGINT"));
+        assertEquals(SQLiteType.TEXT, SQLiteTableRegistry.typeOf("VARCHAR(255)"));
+        assertEquals(SQLiteType.BLOB, SQLiteTableRegistry.typeOf(""));
+        assertEquals(SQLiteType.REAL, SQLiteTableRegistry.typeOf("DOUBLE PRECISION"));
+        assertEquals(SQLiteType.REAL, SQLiteTableRegistry.typeOf("DECIMAL(10,2)"));
+    }
+
+    @Test
+    public void testKeepsLoadedColumnsUntilTheTableChanges() {
+        SQLiteTableRegistry.Columns columns = registry.loadColumns(db, "shop");
+
+        assertSame(columns, registry.getColumns("shop"));
+        assertEquals(SQLiteType.TEXT, columns.getTypes().get("Name"));
+        assertTrue(columns.contains("name"));
+        assertFalse(columns.contains("price"));
+
+        registry.invalidate("shop");
+
+        assertNull(registry.getColumns("shop"));
+    }
+
+    @Test
+    public void testKnowsCreatedTables() {
+        registry.onTableCreated("shop");
+
+        assertTrue(registry.isTableCreated("shop"));
+        assertFalse(registry.isTableCreated("fireworks"));
+    }
+}
@@ -16,6 +16,8 @@ import static com.novoda.sqliteprovider.demo.persistance.DatabaseConstants.TBL_S
 
 public class FireworkReader {
 
+    private static final FireworkRowMapper FIREWORK_MAPPER = new FireworkRowMapper();
+
     private final DatabaseReader databaseReader;
 
     public FireworkReader(DatabaseReader databaseReader) {
@@ -26,7 +28,7 @@ public class FireworkReader {
         Cursor cursor = databaseReader.getFrom(TBL_FIREWORKS, primaryKey);
 
         if (cursor.moveToFirst()) {
-            Firework firework = getFirework(cursor);
+            Firework firework = FIREWORK_MAPPER.map(cursor);
 
             cursor.close();
 
@@ -79,28 +81,13 @@ public class FireworkReader {
     }
 
     private List<Firework> populateListWith(Cursor cursor) {
-        List<Firework> data = new ArrayList<Firework>();
-        if (cursor.moveToFirst()) {
-            do {
-                Firework firework = getFirework(cursor);
-                data.add(firework);
-            } while (cursor.moveToNext());
-        } else {
+        List<Firework> data = FIREWORK_MAPPER.mapAll(cursor);
+        if (data.isEmpty()) {
             Log.e("No data in the cursor.");
         }
         return data;
     }
 
-    private Firework getFirework(Cursor cursor) {
-        String name = cursor.getString(cursor.getColumnIndexOrThrow(Fireworks.COL_NAME));
-        String color = cursor.getString(cursor.getColumnIndexOrThrow(Fireworks.COL_COLOR));
-        String type = cursor.getString(cursor.getColumnIndexOrThrow(Fireworks.COL_NOISE));
-        String noise = cursor.getString(cursor.getColumnIndexOrThrow(Fireworks.COL_TYPE));
-        double price = cursor.getDouble(cursor.getColumnIndexOrThrow(Fireworks.COL_PRICE));
-
-        return new Firework(name, color, type, noise, price);
-    }
-
     public Groups getShopsWithFireworkPricesAddingUpToOverForty() {
         String group = Fireworks.COL_SHOP;
         String having = "SUM (" + Fireworks.COL_PRICE + ") > 40";
@@ -0,0 +1,30 @@
+package com.novoda.sqliteprovider.demo.persistance;
+
+import com.novoda.sqliteprovider.demo.domain.Firework;
+import com.novoda.sqliteprovider.demo.persistance.DatabaseConstants.Fireworks;
+
+import novoda.lib.sqliteprovider.cursor.RowMapper;
+
+class FireworkRowMapper extends RowMapper<Firework> {
+
+    private static final int NAME = 0;
+    private static final int COLOR = 1;
+    private static final int NOISE = 2;
+    private static final int TYPE = 3;
+    private static final int PRICE = 4;
+
+    FireworkRowMapper() {
+        super(Fireworks.COL_NAME, Fireworks.COL_COLOR, Fireworks.COL_NOISE, Fireworks.COL_TYPE, Fireworks.COL_PRICE);
+    }
+
+    @Override
+    protected Firework mapRow(Row row) {
+        String name = row.getString(NAME);
+        String color = row.getString(COLOR);
+        String type = row.getString(NOISE);
+        String noise = row.getString(TYPE);
+        double price = row.getDouble(PRICE);
+
+        return new Firework(name, color, type, noise, price);
+    }
+}